@@ -0,0 +1,261 @@
+package com.highestpeak.gist.concurrent.util;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 按运行时的统计自动调整 {@link InstrumentedThreadPoolExecutor} 线程数的控制器
+ * <p>
+ * 每个采样周期用两次采样之间的增量计算到达率 λ（开始执行数 + 排队超时丢弃数 + 队列增长 + 拒绝数）和平均执行时间 W。
+ * 到达的任务要么已经开始执行，要么还在队列中，要么被拒绝或丢弃；用完成数代替开始执行数会漏掉执行中的任务，长任务下严重低估 λ。
+ * 按 Little 定律 L = λ * W 估计需要的并发数并留出 headroom；平均排队时间超过 targetQueueWait 时，
+ * 再额外加上在 targetQueueWait 内排空当前积压需要的线程数（每次最多翻倍）。
+ * 扩容立即生效，缩容每次最多减少四分之一，扩缩容分别有冷却时间，结果限制在 [minPoolSize, maxPoolSize] 内。
+ * <p>
+ * core 和 max 始终设置为同一个值：有界队列下线程池只有在队列满后才会创建超过 core 的线程，由控制器决定线程数更可控。
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+@Slf4j
+public class AdaptiveThreadPoolSizer implements AutoCloseable {
+
+    /**
+     * 所有控制器共用一个采样线程，采样本身只读取几个计数器
+     */
+    private static final ScheduledExecutorService SAMPLER = Executors.newSingleThreadScheduledExecutor(
+            ExecutorsEx.newThreadFactory("adaptive-thread-pool-sizer"));
+
+    private final InstrumentedThreadPoolExecutor executor;
+    private final int minPoolSize;
+    private final int maxPoolSize;
+    private final long targetQueueWaitNanos;
+    private final double headroom;
+    private final long scaleUpCooldownNanos;
+    private final long scaleDownCooldownNanos;
+    private final ResizeListener resizeListener;
+
+    private ScheduledFuture<?> samplingTask;
+
+    // 上一次采样的值，只在采样线程上访问
+    private long lastSampleNanos;
+    private long lastRunCount;
+    private long lastRunSum;
+    private long lastWaitCount;
+    private long lastWaitSum;
+    private long lastRejected;
+    private long lastExpired;
+    private int lastQueueSize;
+    private long lastResizeNanos;
+
+    /**
+     * 最近一次采样的结果，用于观察
+     */
+    @Getter
+    private volatile double arrivalRatePerSecond;
+    @Getter
+    private volatile double runNanosMean;
+    @Getter
+    private volatile double queueWaitNanosMean;
+
+    private AdaptiveThreadPoolSizer(Builder builder) {
+        this.executor = builder.executor;
+        this.minPoolSize = builder.minPoolSize;
+        this.maxPoolSize = builder.maxPoolSize;
+        this.targetQueueWaitNanos = builder.targetQueueWait.toNanos();
+        this.headroom = builder.headroom;
+        this.scaleUpCooldownNanos = builder.scaleUpCooldown.toNanos();
+        this.scaleDownCooldownNanos = builder.scaleDownCooldown.toNanos();
+        this.resizeListener = builder.resizeListener;
+
+        resize(Math.min(Math.max(executor.getCorePoolSize(), minPoolSize), maxPoolSize));
+        this.lastSampleNanos = System.nanoTime();
+        this.lastResizeNanos = lastSampleNanos - Math.max(scaleUpCooldownNanos, scaleDownCooldownNanos);
+        this.lastRunCount = executor.getRunNanos().getCount();
+        this.lastRunSum = executor.getRunNanos().getSum();
+        this.lastWaitCount = executor.getQueueWaitNanos().getCount();
+        this.lastWaitSum = executor.getQueueWaitNanos().getSum();
+        this.lastRejected = executor.getRejected().sum();
+        this.lastExpired = executor.getExpired().sum();
+        this.lastQueueSize = executor.getQueue().size();
+    }
+
+    public static Builder newBuilder(InstrumentedThreadPoolExecutor executor) {
+        return new Builder(executor);
+    }
+
+    /**
+     * 采样一次并在需要时调整线程数。正常由内部的采样线程按 sampleInterval 调用，也可以在模拟或测试中手动调用
+     *
+     * @return 调整后的线程数
+     */
+    public synchronized int adjust(long nowNanos) {
+        long elapsedNanos = nowNanos - lastSampleNanos;
+        int current = executor.getCorePoolSize();
+        if (elapsedNanos <= 0) {
+            return current;
+        }
+        long runCount = executor.getRunNanos().getCount();
+        long runSum = executor.getRunNanos().getSum();
+        long waitCount = executor.getQueueWaitNanos().getCount();
+        long waitSum = executor.getQueueWaitNanos().getSum();
+        long rejected = executor.getRejected().sum();
+        long expired = executor.getExpired().sum();
+        int queueSize = executor.getQueue().size();
+
+        long completed = runCount - lastRunCount;
+        long started = waitCount - lastWaitCount;
+        long arrivals = Math.max(0, started + (expired - lastExpired) + (queueSize - lastQueueSize) + (rejected - lastRejected));
+        double arrivalRate = arrivals * 1e9 / elapsedNanos;
+        // 这个周期没有任务完成时沿用上一次的执行时间，避免长任务执行期间误判为空闲
+        double runMean = completed > 0 ? (double) (runSum - lastRunSum) / completed : runNanosMean;
+        double waitMean = started > 0 ? (double) (waitSum - lastWaitSum) / started : 0;
+
+        lastSampleNanos = nowNanos;
+        lastRunCount = runCount;
+        lastRunSum = runSum;
+        lastWaitCount = waitCount;
+        lastWaitSum = waitSum;
+        lastRejected = rejected;
+        lastExpired = expired;
+        lastQueueSize = queueSize;
+        arrivalRatePerSecond = arrivalRate;
+        runNanosMean = runMean;
+        queueWaitNanosMean = waitMean;
+
+        // Little 定律：需要的并发数 = 到达率 * 执行时间
+        double desired = arrivalRate * runMean / 1e9 * (1 + headroom);
+        if (waitMean > targetQueueWaitNanos && queueSize > 0) {
+            // 排队已经超出目标，额外加上在目标时间内排空积压需要的线程数，但每次最多翻倍，避免一次积压把线程数拉满
+            double drainThreads = queueSize * runMean / Math.max(targetQueueWaitNanos, 1);
+            desired = Math.max(desired, Math.min(desired + drainThreads, current * 2.0));
+        }
+        int target = (int) Math.min(Math.max(Math.ceil(desired), minPoolSize), maxPoolSize);
+
+        long sinceResizeNanos = nowNanos - lastResizeNanos;
+        if (target > current && sinceResizeNanos >= scaleUpCooldownNanos) {
+            return resize(current, target);
+        }
+        if (target < current && sinceResizeNanos >= scaleDownCooldownNanos) {
+            // 缩容平缓一些，流量的短暂低谷不会把线程一次性缩光
+            return resize(current, Math.max(target, current - Math.max(1, current / 4)));
+        }
+        return current;
+    }
+
+    /**
+     * 停止采样，不会关闭线程池
+     */
+    @Override
+    public synchronized void close() {
+        if (samplingTask != null) {
+            samplingTask.cancel(false);
+            samplingTask = null;
+        }
+    }
+
+    private synchronized AdaptiveThreadPoolSizer start(Duration sampleInterval) {
+        long intervalNanos = sampleInterval.toNanos();
+        samplingTask = SAMPLER.scheduleWithFixedDelay(() -> {
+            if (executor.isShutdown()) {
+                close();
+                return;
+            }
+            try {
+                adjust(System.nanoTime());
+            } catch (Throwable t) {
+                log.warn("adaptive thread pool sizer exception.", t);
+            }
+        }, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+        return this;
+    }
+
+    private int resize(int current, int target) {
+        resize(target);
+        lastResizeNanos = lastSampleNanos;
+        log.info("resize thread pool {} -> {}, arrivalRate: {}/s, runMean: {}ns, queueWaitMean: {}ns",
+                current, target, (long) arrivalRatePerSecond, (long) runNanosMean, (long) queueWaitNanosMean);
+        if (resizeListener != null) {
+            resizeListener.onResize(current, target, this);
+        }
+        return target;
+    }
+
+    private void resize(int size) {
+        // 保证任意时刻 core <= max
+        if (size > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(size);
+            executor.setCorePoolSize(size);
+        } else {
+            executor.setCorePoolSize(size);
+            executor.setMaximumPoolSize(size);
+        }
+    }
+
+    @FunctionalInterface
+    public interface ResizeListener {
+        /**
+         * 在采样线程上调用，可以通过 sizer 读取本次采样的结果
+         */
+        void onResize(int oldSize, int newSize, AdaptiveThreadPoolSizer sizer);
+    }
+
+    /**
+     * Builder 方式构建对象
+     */
+    @Accessors(fluent = true)
+    @Setter
+    public static class Builder {
+        private final InstrumentedThreadPoolExecutor executor;
+        private int minPoolSize = 1;
+        private int maxPoolSize = Runtime.getRuntime().availableProcessors() * 8;
+        private Duration sampleInterval = Duration.ofSeconds(1);
+        /**
+         * 平均排队时间的目标，超过后按积压扩容
+         */
+        private Duration targetQueueWait = Duration.ofMillis(50);
+        /**
+         * Little 定律估计值之上额外预留的比例
+         */
+        private double headroom = 0.2;
+        private Duration scaleUpCooldown = Duration.ofSeconds(1);
+        private Duration scaleDownCooldown = Duration.ofSeconds(30);
+        private ResizeListener resizeListener;
+
+        private Builder(InstrumentedThreadPoolExecutor executor) {
+            this.executor = Preconditions.checkNotNull(executor, "executor is required");
+        }
+
+        /**
+         * 创建后立即按 sampleInterval 开始采样，线程池 shutdown 后自动停止
+         */
+        public AdaptiveThreadPoolSizer start() {
+            AdaptiveThreadPoolSizer sizer = build();
+            return sizer.start(sampleInterval);
+        }
+
+        /**
+         * 只创建不启动采样，需要自己调用 {@link AdaptiveThreadPoolSizer#adjust}
+         */
+        public AdaptiveThreadPoolSizer build() {
+            Preconditions.checkArgument(minPoolSize > 0 && maxPoolSize >= minPoolSize,
+                    "illegal pool size bounds. min: %s, max: %s", minPoolSize, maxPoolSize);
+            Preconditions.checkArgument(headroom >= 0, "headroom must not be negative");
+            Preconditions.checkArgument(!sampleInterval.isNegative() && !sampleInterval.isZero(), "sampleInterval must be positive");
+            Preconditions.checkNotNull(targetQueueWait, "targetQueueWait is required");
+            Preconditions.checkNotNull(scaleUpCooldown, "scaleUpCooldown is required");
+            Preconditions.checkNotNull(scaleDownCooldown, "scaleDownCooldown is required");
+            return new AdaptiveThreadPoolSizer(this);
+        }
+    }
+}
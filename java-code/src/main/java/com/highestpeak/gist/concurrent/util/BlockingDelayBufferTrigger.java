@@ -1,22 +1,29 @@
 package com.highestpeak.gist.concurrent.util;
 
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 
 import org.apache.commons.lang3.StringUtils;
-import org.slf4j.MDC;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ComparisonChain;
 
 import lombok.Getter;
-import lombok.NonNull;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 import lombok.extern.slf4j.Slf4j;
@@ -28,246 +35,999 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public final class BlockingDelayBufferTrigger<KEY, VAL> {
 
-    private final ReentrantLock lock = new ReentrantLock();
-    private final Condition queueEmpty = lock.newCondition();
-    private final Condition queueFull = lock.newCondition();
-    private final int capacity;
+    /**
+     * 按 key 分片，每个分片有独立的锁、dataMap、延迟队列和分发线程，降低多生产者下的锁竞争
+     */
+    private final List<Shard> shards;
+
+    /**
+     * 没有指定优先级类别时使用的类别
+     */
+    public static final String DEFAULT_PRIORITY_CLASS = "default";
+
+    private static final Comparator<DelayWrapper<?, ?>> LANE_ORDER = Comparator.comparingInt(wrapper -> wrapper.lane);
 
-    @SuppressWarnings("FieldCanBeLocal")
-    private final Thread dispatcherThread;
     private volatile boolean running = true;
 
-    private final HashMap<KEY, DelayWrapper<KEY, VAL>> dataMap;
-    private final PriorityQueue<DelayWrapper<KEY, VAL>> priorityQueue;
     private final BiConsumer<KEY, VAL> upToTimeConsumer;
     private final BiFunction<VAL, VAL, VAL> dupValFunc;
-    private final KeyAffinityExecutor<KEY> keyAffinityExecutor;
+    /**
+     * 优先级类别，下标即 lane 编号，按权重从高到低排列；没有配置时只有 {@link #DEFAULT_PRIORITY_CLASS}
+     */
+    private final String[] priorityClasses;
+    private final Map<String, Integer> priorityLanes;
+    private final int defaultLane;
+    /**
+     * 去重执行器，每个优先级类别有独立的线程池，线程数按权重分配，低优先级的积压不会占用高优先级的线程。
+     * 所有类别共用一份按 key 的状态，同一个 key 即使前后落在不同类别也串行执行，执行期间的重复提交用 dupValFunc 合并为一次；
+     * 虚拟线程模式下所有类别共用一个执行器
+     */
+    private final SkipDuplicateExecutor<KEY, PendingConsume<VAL>> consumeExecutor;
+
+    /**
+     * 批量模式：到期元素按执行通道分组后整批交给 batchConsumer，通道内串行执行，同一个 key 总是落在同一个通道
+     */
+    private final BiConsumer<List<KEY>, List<VAL>> batchConsumer;
+    private final KeyAffinityExecutor<Integer> batchExecutor;
+    private final int laneCount;
+    private final int maxBatchSize;
 
-    private BlockingDelayBufferTrigger(String threadName, int capacity, int executorCount,
-            BiConsumer<KEY, VAL> upToTimeConsumer, BiFunction<VAL, VAL, VAL> dupValFunc) {
-        this.capacity = capacity;
-        this.dataMap = new HashMap<>();
-        this.priorityQueue = new PriorityQueue<>();
-        this.upToTimeConsumer = upToTimeConsumer;
-        this.dupValFunc = dupValFunc;
+    private final OverflowPolicy overflowPolicy;
+    private final BiConsumer<KEY, VAL> spillConsumer;
+
+    /**
+     * 可选的持久化日志，为 null 时不落盘
+     */
+    private final DelayBufferJournal<KEY, VAL> journal;
+
+    private final DelayBufferMetrics metrics;
+    private final ContextPropagator contextPropagator;
+
+    /**
+     * 自适应延迟：add 传入的延迟作为上限，按 key 最近的写入频率决定实际延迟
+     */
+    private final boolean adaptiveDelay;
+    private final long adaptiveMinDelayMs;
+    private final int adaptiveHotCount;
+
+    /**
+     * 已经提交给执行器但还没有执行完的任务数，用于优雅关闭时等待
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private BlockingDelayBufferTrigger(Builder<KEY, VAL> builder) {
+        this.upToTimeConsumer = builder.upToTimeConsumer;
+        this.dupValFunc = builder.dupValConsumer;
+        this.batchConsumer = builder.batchConsumer;
+        this.laneCount = builder.executorCount;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.overflowPolicy = builder.overflowPolicy;
+        this.spillConsumer = builder.spillConsumer;
+        this.journal = builder.journal;
+        this.metrics = builder.metrics;
+        this.contextPropagator = builder.contextPropagator;
+        this.adaptiveDelay = builder.adaptiveDelay;
+        this.adaptiveMinDelayMs = builder.adaptiveMinDelayMs;
+        this.adaptiveHotCount = builder.adaptiveHotCount;
 
         // 线程名称
-        String executorThreadName = StringUtils.defaultIfBlank(threadName, "blocking-delay-buffer-trigger");
+        String executorThreadName = StringUtils.defaultIfBlank(builder.threadName, "blocking-delay-buffer-trigger");
         // 区分不同的线程名称
         if (!executorThreadName.contains("%d")) {
             executorThreadName += "-%d";
         }
 
-        // 使用可以去重的亲缘性线程会更好，避免大任务多次并行执行
-        this.keyAffinityExecutor = ExecutorsExUtils.newSkipDuplicateExecutor(executorCount, executorCount, executorThreadName);
+        // 优先级类别按权重从高到低排列，同一次到期的元素先分发高优先级的
+        Map<String, Integer> weights = new HashMap<>(builder.priorityWeights);
+        weights.putIfAbsent(DEFAULT_PRIORITY_CLASS, 1);
+        List<Map.Entry<String, Integer>> sortedWeights = new ArrayList<>(weights.entrySet());
+        sortedWeights.sort(Map.Entry.<String, Integer> comparingByValue().reversed());
+        this.priorityClasses = new String[sortedWeights.size()];
+        this.priorityLanes = new HashMap<>();
+        for (int lane = 0; lane < sortedWeights.size(); lane++) {
+            priorityClasses[lane] = sortedWeights.get(lane).getKey();
+            priorityLanes.put(priorityClasses[lane], lane);
+        }
+        this.defaultLane = priorityLanes.get(DEFAULT_PRIORITY_CLASS);
+
+        ThreadFactory virtualThreadFactory = builder.executionMode == ExecutionMode.PLATFORM_POOL
+                ? null : VirtualThreads.newFactory(executorThreadName.replace("%d", ""));
+        if (batchConsumer != null) {
+            // 批量模式下按通道串行，不能去重，否则会丢掉整批数据
+            this.consumeExecutor = null;
+            this.batchExecutor = KeyAffinityExecutor.newSerializingExecutor(laneCount, laneCount, executorThreadName);
+        } else if (virtualThreadFactory != null) {
+            // 每个任务一个虚拟线程，并发只受 virtualThreadConcurrency 限制，优先级只决定分发顺序
+            ThreadFactory consumerThreadFactory = virtualThreadFactory;
+            Semaphore concurrency = builder.virtualThreadConcurrency > 0 ? new Semaphore(builder.virtualThreadConcurrency) : null;
+            this.consumeExecutor = new SkipDuplicateExecutor<>(
+                    command -> consumerThreadFactory.newThread(concurrency == null ? command : () -> {
+                        // 在虚拟线程内等待，阻塞的只是虚拟线程，不会卡住分发线程
+                        concurrency.acquireUninterruptibly();
+                        try {
+                            command.run();
+                        } finally {
+                            concurrency.release();
+                        }
+                    }).start(), this::consume, this::mergePending);
+            this.batchExecutor = null;
+        } else {
+            // 使用可以去重的线程池，避免大任务多次并行执行；按合并后的优先级选择线程池
+            int[] laneWeights = new int[priorityClasses.length];
+            String[] laneThreadNames = new String[priorityClasses.length];
+            for (int lane = 0; lane < priorityClasses.length; lane++) {
+                Map.Entry<String, Integer> weight = sortedWeights.get(lane);
+                laneWeights[lane] = weight.getValue();
+                laneThreadNames[lane] = priorityClasses.length == 1 ? executorThreadName
+                        : executorThreadName.replace("%d", weight.getKey() + "-%d");
+            }
+            int[] laneThreadCounts = splitByWeight(builder.executorCount, laneWeights);
+            this.consumeExecutor = SkipDuplicateExecutor.newLaneExecutor(laneThreadCounts, laneThreadNames, pending -> pending.lane,
+                    this::consume, this::mergePending);
+            this.batchExecutor = null;
+        }
 
+        // 总容量平均分配到每个分片上
+        int shardCount = builder.shardCount;
+        int shardCapacity = (builder.capacity + shardCount - 1) / shardCount;
         String dispatcherThreadName = "dispatcher-" + executorThreadName;
-        this.dispatcherThread = new Thread(() -> {
-            while (running) {
-                try {
-                    dispatcher();
-                } catch (Exception e) {
-                    log.warn("check start exception.", e);
+        List<Shard> shardList = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shardList.add(new Shard(shardCapacity, shardCount == 1 ? dispatcherThreadName : dispatcherThreadName + "-shard-" + i,
+                    newScheduler(builder), virtualThreadFactory,
+                    adaptiveDelay ? new CountMinSketch(shardCapacity, builder.adaptiveWindowMs) : null));
+        }
+        this.shards = Collections.unmodifiableList(shardList);
+        if (journal != null) {
+            // 先回放上次遗留的数据再启动分发线程，已经到期的数据启动后会立即分发
+            journal.recover((key, val, execTs) -> shardFor(key).recover(key, val, execTs));
+        }
+        metrics.registerQueueDepth(this::size);
+        shards.forEach(Shard::start);
+    }
+
+    /**
+     * 按权重用最大余数法拆分 count：先按比例向下取整，剩下的依次分给小数部分最大的，总数等于 count。
+     * 每份至少为 1，不够时从最大的一份中借，份数多于 count 时每份都是 1
+     */
+    static int[] splitByWeight(int count, int[] weights) {
+        int[] parts = new int[weights.length];
+        if (count <= weights.length) {
+            Arrays.fill(parts, 1);
+            return parts;
+        }
+        long totalWeight = 0;
+        for (int weight : weights) {
+            totalWeight += weight;
+        }
+        int assigned = 0;
+        long[] remainders = new long[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            long quota = (long) count * weights[i];
+            parts[i] = (int) (quota / totalWeight);
+            remainders[i] = quota % totalWeight;
+            assigned += parts[i];
+        }
+        for (; assigned < count; assigned++) {
+            int largest = 0;
+            for (int i = 1; i < weights.length; i++) {
+                if (remainders[i] > remainders[largest]) {
+                    largest = i;
                 }
             }
-        }, dispatcherThreadName);
-        this.dispatcherThread.setDaemon(true);
-        this.dispatcherThread.start();
+            parts[largest]++;
+            remainders[largest] = -1;
+        }
+        for (int i = 0; i < parts.length; i++) {
+            while (parts[i] == 0) {
+                int largest = 0;
+                for (int j = 1; j < parts.length; j++) {
+                    if (parts[j] > parts[largest]) {
+                        largest = j;
+                    }
+                }
+                parts[largest]--;
+                parts[i]++;
+            }
+        }
+        return parts;
     }
 
-    private String buildOperationName() {
-        return "asyncExecute/" + Thread.currentThread().getName() + "/BufferDispatcher";
+    private static <KEY, VAL> DelayScheduler<KEY, VAL> newScheduler(Builder<KEY, VAL> builder) {
+        switch (builder.schedulerType) {
+            case TIMING_WHEEL:
+                return new HashedWheelDelayScheduler<>(builder.wheelTickMs);
+            case PRIORITY_QUEUE:
+            default:
+                return new IndexedHeapDelayScheduler<>();
+        }
     }
 
-    private void dispatcher() throws Exception {
-        DelayWrapper<KEY, VAL> upToTimeObj = peekAndRemoveUpToTime();
-        try {
-            if (upToTimeObj.getMdcContext() != null) {
-                // dispatcher 线程没有上下文，MDC 中没有需要执行后恢复的内容
-                MDC.setContextMap(upToTimeObj.getMdcContext());
+    private Shard shardFor(KEY key) {
+        if (shards.size() == 1) {
+            return shards.get(0);
+        }
+        return shards.get(spread(key) % shards.size());
+    }
+
+    /**
+     * 打散 hashCode 的高位，避免低位相同的 key 落到同一个分片/通道
+     */
+    private static int spread(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return h & Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return 没能提交给执行器的 key
+     */
+    private List<KEY> dispatchAll(List<DelayWrapper<KEY, VAL>> upToTimeList) {
+        long now = System.currentTimeMillis();
+        for (DelayWrapper<KEY, VAL> upToTimeObj : upToTimeList) {
+            metrics.onDispatch(priorityClasses[upToTimeObj.lane], now - upToTimeObj.getExecTs());
+        }
+        if (batchConsumer != null) {
+            return dispatchBatch(upToTimeList);
+        }
+        List<KEY> failedKeys = Collections.emptyList();
+        for (DelayWrapper<KEY, VAL> upToTimeObj : upToTimeList) {
+            inFlight.incrementAndGet();
+            try {
+                submit(upToTimeObj);
+            } catch (Exception e) {
+                releaseInFlight();
+                if (failedKeys.isEmpty()) {
+                    failedKeys = new ArrayList<>();
+                }
+                failedKeys.add(upToTimeObj.getKey());
+                log.warn("dispatch exception. key: {}", upToTimeObj.getKey(), e);
             }
-            Scope.supplyWithExistScope(upToTimeObj.getScope(), executeWithKtrace(upToTimeObj));
-        } finally {
-            // dispatcher 线程没有上下文，MDC 直接清理
-            MDC.clear();
         }
+        return failedKeys;
     }
 
     /**
-     * 参考 {@link com.kuaishou.infra.ktrace.sdk.async.KtraceCallable#call}, 传递 ktrace
+     * 按执行通道分组，每个通道按 maxBatchSize 切分后调用一次 batchConsumer
      */
-    private ThrowableSupplier<Void, Exception> executeWithKtrace(DelayWrapper<KEY, VAL> upToTimeObj) {
-        return () -> {
-            if (upToTimeObj.getSnapshot() == null) {
-                keyAffinityExecutor.executeEx(upToTimeObj.getKey(), () -> upToTimeConsumer.accept(upToTimeObj.getKey(), upToTimeObj.getVal()));
-            } else {
-                Span localSpan = null;
-                String operationName = buildOperationName();
+    private List<KEY> dispatchBatch(List<DelayWrapper<KEY, VAL>> upToTimeList) {
+        List<KEY> failedKeys = new ArrayList<>(0);
+        List<List<DelayWrapper<KEY, VAL>>> lanes = new ArrayList<>(laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            lanes.add(new ArrayList<>());
+        }
+        for (DelayWrapper<KEY, VAL> upToTimeObj : upToTimeList) {
+            lanes.get(spread(upToTimeObj.getKey()) % laneCount).add(upToTimeObj);
+        }
+        for (int lane = 0; lane < laneCount; lane++) {
+            List<DelayWrapper<KEY, VAL>> laneList = lanes.get(lane);
+            for (int from = 0; from < laneList.size(); from += maxBatchSize) {
+                List<DelayWrapper<KEY, VAL>> batch = laneList.subList(from, Math.min(from + maxBatchSize, laneList.size()));
+                List<KEY> keys = new ArrayList<>(batch.size());
+                List<VAL> vals = new ArrayList<>(batch.size());
+                long[] journalSeqs = new long[batch.size()];
+                for (int i = 0; i < batch.size(); i++) {
+                    DelayWrapper<KEY, VAL> upToTimeObj = batch.get(i);
+                    keys.add(upToTimeObj.getKey());
+                    vals.add(upToTimeObj.getVal());
+                    journalSeqs[i] = upToTimeObj.journalSeq;
+                }
+                inFlight.incrementAndGet();
                 try {
-                    localSpan = createLocalSpanAndContinued(operationName, upToTimeObj.getSnapshot())
-                            .setComponentName(LOCAL_COMPONENT_NAME_THREAD_SWITCH);
-                } catch (Throwable t) {
-                    KtracePerfUtils.perfInstrumentFailed(COMPONENT_TYPE_LOCAL, "", operationName);
-                    log.error("[fail safe] [ktrace] create span failed!", t);
+                    batchExecutor.executeEx(lane, () -> consumeBatch(keys, vals, journalSeqs));
+                } catch (Exception e) {
+                    releaseInFlight();
+                    failedKeys.addAll(keys);
+                    log.warn("dispatch batch exception. lane: {}, size: {}", lane, keys.size(), e);
                 }
+            }
+        }
+        return failedKeys;
+    }
 
-                try {
-                    keyAffinityExecutor.executeEx(upToTimeObj.getKey(), () -> upToTimeConsumer.accept(upToTimeObj.getKey(), upToTimeObj.getVal()));
-                } catch (Throwable t) {
-                    if (localSpan != null) {
-                        localSpan.errorOccurred().log(t);
-                    }
-                    throw t;
-                } finally {
-                    if (null != localSpan) {
-                        stopSpan(localSpan);
-                    }
+    /**
+     * 在执行线程上调用，上下文也在这里设置，分发线程只负责提交任务
+     */
+    private void consume(KEY key, PendingConsume<VAL> pending) {
+        VAL val = pending.val;
+        Object context = pending.context;
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        Object previousContext = context == null ? null : contextPropagator.attach(context);
+        try {
+            upToTimeConsumer.accept(key, val);
+            success = true;
+        } finally {
+            if (context != null) {
+                contextPropagator.detach(previousContext);
+            }
+            metrics.onConsume(1, System.nanoTime() - startNanos, success);
+            // 消费完成（包括失败）后才记录分发，消费过程中进程退出，重启后会重新分发
+            if (journal != null) {
+                journal.appendDispatch(key, pending.journalSeq);
+            }
+        }
+    }
+
+    private void consumeBatch(List<KEY> keys, List<VAL> vals, long[] journalSeqs) {
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            batchConsumer.accept(keys, vals);
+            success = true;
+        } finally {
+            metrics.onConsume(keys.size(), System.nanoTime() - startNanos, success);
+            if (journal != null) {
+                for (int i = 0; i < keys.size(); i++) {
+                    journal.appendDispatch(keys.get(i), journalSeqs[i]);
                 }
             }
-            return null;
-        };
+            releaseInFlight();
+        }
+    }
+
+    private void releaseInFlight() {
+        if (inFlight.decrementAndGet() == 0) {
+            synchronized (inFlight) {
+                inFlight.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 同一个 key 执行期间的多次分发合并为一次，journalSeq 和 context 保留后分发的，优先级保留较高的
+     */
+    private PendingConsume<VAL> mergePending(PendingConsume<VAL> older, PendingConsume<VAL> newer) {
+        return new PendingConsume<>(dupValFunc.apply(older.val, newer.val), newer.journalSeq, newer.context,
+                Math.min(older.lane, newer.lane));
+    }
+
+    /**
+     * upToTimeObj 在分发完成后会被放回复用池，异步执行的任务只能捕获取出来的值，不能捕获 upToTimeObj 本身。
+     * 被合并的分发和覆盖它的那次执行共用一个 future，执行完成后各自释放 inFlight
+     */
+    private void submit(DelayWrapper<KEY, VAL> upToTimeObj) {
+        PendingConsume<VAL> pending = new PendingConsume<>(upToTimeObj.getVal(), upToTimeObj.journalSeq, upToTimeObj.context,
+                upToTimeObj.lane);
+        consumeExecutor.submit(upToTimeObj.getKey(), pending)
+                .whenComplete((result, throwable) -> releaseInFlight());
     }
 
     public void shutdown() {
         this.running = false;
+        shards.forEach(Shard::rejectPending);
+        closeExecutors();
+    }
+
+    /**
+     * 优雅关闭：停止接收新数据，唤醒分发线程，把所有待执行的数据按 execTs 顺序立即分发，
+     * 然后在 timeout 内等待执行器中的任务执行完，最后关闭执行器
+     *
+     * @return 本次关闭的分发情况
+     */
+    public ShutdownReport<KEY> shutdownGracefully(Duration timeout) {
+        long deadlineNanos = System.nanoTime() + timeout.toNanos();
+        this.running = false;
+        shards.forEach(Shard::rejectPending);
+        for (Shard shard : shards) {
+            shard.wakeUpAndJoin(deadlineNanos);
+        }
+
+        // 分发线程退出后取出所有剩余数据，跨分片按 execTs 排序
+        List<DelayWrapper<KEY, VAL>> remaining = new ArrayList<>();
+        for (Shard shard : shards) {
+            remaining.addAll(shard.drainAll());
+        }
+        remaining.sort(Comparator.comparingLong(DelayWrapper::getExecTs));
+        List<KEY> droppedKeys = dispatchAll(remaining);
+
+        int pendingTasks = awaitInFlight(deadlineNanos);
+        if (pendingTasks > 0) {
+            log.warn("shutdown gracefully timeout, {} tasks still running.", pendingTasks);
+        }
+        closeExecutors();
+        return new ShutdownReport<>(remaining.size() - droppedKeys.size(), droppedKeys, pendingTasks);
+    }
+
+    /**
+     * @return 超时时仍未执行完的任务数
+     */
+    private int awaitInFlight(long deadlineNanos) {
+        synchronized (inFlight) {
+            long remainingNanos;
+            while (inFlight.get() > 0 && (remainingNanos = deadlineNanos - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(inFlight, remainingNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return Math.max(inFlight.get(), 0);
+        }
+    }
+
+    private void closeExecutors() {
         try {
-            keyAffinityExecutor.close();
+            if (consumeExecutor != null) {
+                consumeExecutor.close();
+            }
+            if (batchExecutor != null) {
+                batchExecutor.close();
+            }
         } catch (Exception e) {
             log.warn("shutdown exception.", e);
         }
+        if (journal != null) {
+            journal.close();
+        }
     }
 
     /**
      * 如果在延迟过程中，有新请求，不改变延迟排序，确保 1 分钟执行一次
+     * <p>
+     * 容量满时按 {@link OverflowPolicy} 处理，{@link OverflowPolicy#BLOCK} 会阻塞等待。开启 {@link Builder#adaptiveDelay} 时 delay 是延迟上限
+     */
+    public AddStatus add(KEY key, VAL param, long delay, TimeUnit unit) {
+        return add(key, param, delay, unit, DEFAULT_PRIORITY_CLASS);
+    }
+
+    /**
+     * 指定优先级类别的 add。已存在的 key 合并时保留较高的优先级；同一个 key 换用不同的类别也不会并行执行
+     *
+     * @param priorityClass 需要在 {@link Builder#priorityWeights} 中配置过，或者为 {@link #DEFAULT_PRIORITY_CLASS}
+     */
+    public AddStatus add(KEY key, VAL param, long delay, TimeUnit unit, String priorityClass) {
+        AddStatus status = shardFor(key).add(key, param, toExecTs(delay, unit), laneOf(priorityClass), contextPropagator.capture(), true);
+        metrics.onAdd(status);
+        return status;
+    }
+
+    /**
+     * 不阻塞的 add，容量满且策略为 {@link OverflowPolicy#BLOCK} 时直接返回 {@link AddStatus#REJECTED}
      */
-    public void add(KEY key, VAL param, long delay, TimeUnit unit) {
-        // 当前请求的执行时间
+    public AddStatus tryAdd(KEY key, VAL param, long delay, TimeUnit unit) {
+        return tryAdd(key, param, delay, unit, DEFAULT_PRIORITY_CLASS);
+    }
+
+    public AddStatus tryAdd(KEY key, VAL param, long delay, TimeUnit unit, String priorityClass) {
+        AddStatus status = shardFor(key).add(key, param, toExecTs(delay, unit), laneOf(priorityClass), contextPropagator.capture(), false);
+        metrics.onAdd(status);
+        return status;
+    }
+
+    /**
+     * 异步 add，调用线程不会阻塞。容量满且策略为 {@link OverflowPolicy#BLOCK} 时排队，等分发线程腾出空间后再加入并完成 future
+     */
+    public CompletableFuture<AddStatus> addAsync(KEY key, VAL param, long delay, TimeUnit unit) {
+        return addAsync(key, param, delay, unit, DEFAULT_PRIORITY_CLASS);
+    }
+
+    public CompletableFuture<AddStatus> addAsync(KEY key, VAL param, long delay, TimeUnit unit, String priorityClass) {
+        CompletableFuture<AddStatus> future = shardFor(key).addAsync(key, param, toExecTs(delay, unit), laneOf(priorityClass),
+                contextPropagator.capture());
+        if (future.isDone()) {
+            metrics.onAdd(future.join());
+        } else {
+            future.thenAccept(metrics::onAdd);
+        }
+        return future;
+    }
+
+    /**
+     * 当前所有分片中待执行的 key 数量
+     */
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    private int laneOf(String priorityClass) {
+        if (DEFAULT_PRIORITY_CLASS.equals(priorityClass)) {
+            return defaultLane;
+        }
+        Integer lane = priorityLanes.get(priorityClass);
+        Preconditions.checkArgument(lane != null, "unknown priority class: %s", priorityClass);
+        return lane;
+    }
+
+    /**
+     * 当前请求的执行时间
+     */
+    private static long toExecTs(long delay, TimeUnit unit) {
         long execTs = System.currentTimeMillis();
         if (delay > 0) {
             execTs += unit.toMillis(delay);
         }
+        return execTs;
+    }
 
-        lock.lock();
-        try {
-            // 如果已经包含该key，1: 使用更短的执行时间，支持插队；2：对携带的对象进行 merge
-            if (dataMap.containsKey(key)) {
-                DelayWrapper<KEY, VAL> oldDelay = dataMap.get(key);
-                VAL oldVal = oldDelay.getVal();
-                VAL targetVal = dupValFunc.apply(oldVal, param); // 基于 oldVal 和 newVal 合并新的 val
-                if (execTs < oldDelay.getExecTs()) { // 新增的延迟更低，删除老元素，插入新元素。确保 priorityQueue 能触发排序
-                    priorityQueue.remove(oldDelay);
-                    dataMap.remove(key);
-
-                    DelayWrapper<KEY, VAL> delayWrapper = new DelayWrapper<>(execTs, key, targetVal);
-                    priorityQueue.add(delayWrapper);
-                    dataMap.put(key, delayWrapper);
-                    log.info("addToDelay found short delay request, key:{}, delay:{}, unit:{}", key, delay, unit);
-                    // 新增加的元素在队首，唤醒分发线程
-                    if (delayWrapper == priorityQueue.peek()) {
-                        queueEmpty.signal();
+    /**
+     * 一个分片：独立的锁、dataMap、延迟队列以及分发线程。同一个 key 总是落在同一个分片，merge 和插队语义不变
+     */
+    private final class Shard {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition queueEmpty = lock.newCondition();
+        private final Condition queueFull = lock.newCondition();
+        private final int capacity;
+
+        private final Thread dispatcherThread;
+
+        private final HashMap<KEY, DelayWrapper<KEY, VAL>> dataMap;
+        private final DelayScheduler<KEY, VAL> scheduler;
+        /**
+         * 容量满时排队等待加入的 addAsync 请求，最多 capacity 个
+         */
+        private final ArrayDeque<PendingAdd<KEY, VAL>> pendingAdds = new ArrayDeque<>();
+        /**
+         * 分发线程每次取出的到期元素，只在分发线程中使用，下一次取之前回收到复用池
+         */
+        private final ArrayList<DelayWrapper<KEY, VAL>> dueList = new ArrayList<>();
+        /**
+         * DelayWrapper 复用池，通过 next 串成的空闲链表，最多 capacity 个
+         */
+        private DelayWrapper<KEY, VAL> freeWrappers;
+        private int freeWrapperCount;
+        /**
+         * 自适应延迟模式下估算每个 key 的写入频率，没有开启时为 null
+         */
+        private final CountMinSketch writeRateSketch;
+
+        /**
+         * @param threadFactory 不为 null 时分发线程也使用虚拟线程
+         */
+        private Shard(int capacity, String dispatcherThreadName, DelayScheduler<KEY, VAL> scheduler, ThreadFactory threadFactory,
+                CountMinSketch writeRateSketch) {
+            this.capacity = capacity;
+            this.writeRateSketch = writeRateSketch;
+            this.dataMap = new HashMap<>();
+            this.scheduler = scheduler;
+            Runnable dispatchLoop = () -> {
+                while (running) {
+                    try {
+                        dispatchAll(drainUpToTime());
+                    } catch (Exception e) {
+                        log.warn("check start exception.", e);
                     }
-                } else {
-                    oldDelay.setVal(targetVal);
-                    log.debug("addToDelay distinct key:{}, delay:{}, unit:{}", key, delay, unit);
                 }
-                return;
+            };
+            this.dispatcherThread = threadFactory == null ? new Thread(dispatchLoop) : threadFactory.newThread(dispatchLoop);
+            this.dispatcherThread.setName(dispatcherThreadName);
+            this.dispatcherThread.setDaemon(true);
+        }
+
+        private void start() {
+            dispatcherThread.start();
+        }
+
+        private AddStatus add(KEY key, VAL param, long execTs, int lane, Object context, boolean blocking) {
+            DelayWrapper<KEY, VAL> evicted = null;
+            AddStatus status;
+            // 日志记录在锁外编码
+            DelayBufferJournal.Record<KEY> journalRecord = journal == null ? null : journal.encodeUpsert(key, param);
+            lock.lock();
+            try {
+                if (!running) {
+                    return AddStatus.REJECTED;
+                }
+                if (merge(key, param, execTs, lane, context, journalRecord)) {
+                    return AddStatus.MERGED;
+                }
+                if (dataMap.size() < capacity) {
+                    insert(key, param, execTs, lane, context, journalRecord);
+                    return AddStatus.ADDED;
+                }
+                switch (overflowPolicy) {
+                    case BLOCK:
+                        if (!blocking || !awaitNotFull(key) || !running) {
+                            return AddStatus.REJECTED;
+                        }
+                        // 等待期间同一个 key 可能已经被其他线程加入
+                        if (merge(key, param, execTs, lane, context, journalRecord)) {
+                            return AddStatus.MERGED;
+                        }
+                        insert(key, param, execTs, lane, context, journalRecord);
+                        return AddStatus.ADDED;
+                    case DROP_OLDEST:
+                    case CONSUME_EARLIEST:
+                        evicted = scheduler.pollFirst();
+                        dataMap.remove(evicted.getKey());
+                        insert(key, param, execTs, lane, context, journalRecord);
+                        status = overflowPolicy == OverflowPolicy.DROP_OLDEST ? AddStatus.DROPPED_OLDEST : AddStatus.CONSUMED_EARLIEST;
+                        break;
+                    case SPILL:
+                        status = AddStatus.SPILLED;
+                        break;
+                    case REJECT:
+                    default:
+                        return AddStatus.REJECTED;
+                }
+            } finally {
+                lock.unlock();
             }
 
-            while (dataMap.size() >= capacity) {
-                try {
-                    boolean status = queueFull.await(10, TimeUnit.SECONDS);
-                    if (!status) { // false 由于超时导致， 需要重新等待
-                        log.warn("queueFull always full wait 10 seconds. key: {}", key);
-                    }
-                } catch (InterruptedException e) {
-                    log.info("thread was interrupt by system, need close. key: {}", key);
-                    break;
+            // 回调放在锁外执行
+            if (status == AddStatus.SPILLED) {
+                spillConsumer.accept(key, param);
+            } else if (status == AddStatus.CONSUMED_EARLIEST) {
+                dispatchAll(Collections.singletonList(evicted));
+            } else {
+                if (journal != null) {
+                    journal.appendDispatch(evicted.getKey(), evicted.journalSeq);
+                }
+            }
+            return status;
+        }
+
+        private CompletableFuture<AddStatus> addAsync(KEY key, VAL param, long execTs, int lane, Object context) {
+            if (overflowPolicy != OverflowPolicy.BLOCK) {
+                return CompletableFuture.completedFuture(add(key, param, execTs, lane, context, false));
+            }
+            DelayBufferJournal.Record<KEY> journalRecord = journal == null ? null : journal.encodeUpsert(key, param);
+            lock.lock();
+            try {
+                if (!running) {
+                    return CompletableFuture.completedFuture(AddStatus.REJECTED);
+                }
+                if (merge(key, param, execTs, lane, context, journalRecord)) {
+                    return CompletableFuture.completedFuture(AddStatus.MERGED);
+                }
+                if (dataMap.size() < capacity) {
+                    insert(key, param, execTs, lane, context, journalRecord);
+                    return CompletableFuture.completedFuture(AddStatus.ADDED);
+                }
+                if (pendingAdds.size() >= capacity) {
+                    return CompletableFuture.completedFuture(AddStatus.REJECTED);
+                }
+                PendingAdd<KEY, VAL> pendingAdd = new PendingAdd<>(key, param, execTs, lane, context, journalRecord);
+                pendingAdds.add(pendingAdd);
+                return pendingAdd.future;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 自适应延迟：把请求的延迟当作上限，写入越频繁的 key 延迟越接近上限，偶尔写一次的 key 接近 adaptiveMinDelayMs。
+         * 热 key 仍然能充分合并，冷 key 不用白白等满整个窗口。
+         * 写入次数包含本次 add，但只读取不计数，add 成功加入或合并后才由 {@link #recordWrite} 计入
+         */
+        private long adaptExecTs(KEY key, long capTs) {
+            long now = System.currentTimeMillis();
+            long maxDelay = capTs - now;
+            if (maxDelay <= adaptiveMinDelayMs) {
+                return capTs;
+            }
+            int writeCount = writeRateSketch.estimate(spread(key), now) + 1;
+            double hotness = Math.min(1.0, (double) (writeCount - 1) / adaptiveHotCount);
+            return now + adaptiveMinDelayMs + (long) ((maxDelay - adaptiveMinDelayMs) * hotness);
+        }
+
+        private void recordWrite(KEY key) {
+            writeRateSketch.increment(spread(key), System.currentTimeMillis());
+        }
+
+        /**
+         * 如果已经包含该key，1: 使用更短的执行时间，支持插队；2：对携带的对象进行 merge。
+         * 开启自适应延迟时，变热的 key 还会推迟执行时间以便继续合并，但不会晚于各次 add 上限中最早的那个
+         *
+         * @param capTs 本次 add 请求的执行时间，自适应延迟时是上限
+         * @return false 表示不包含该 key
+         */
+        private boolean merge(KEY key, VAL param, long capTs, int lane, Object context, DelayBufferJournal.Record<KEY> journalRecord) {
+            DelayWrapper<KEY, VAL> oldDelay = dataMap.get(key);
+            if (oldDelay == null) {
+                return false;
+            }
+            long execTs = capTs;
+            if (writeRateSketch != null) {
+                oldDelay.capTs = Math.min(oldDelay.capTs, capTs);
+                execTs = adaptExecTs(key, oldDelay.capTs);
+                recordWrite(key);
+            }
+            VAL targetVal = dupValFunc.apply(oldDelay.getVal(), param); // 基于 oldVal 和 newVal 合并新的 val
+            oldDelay.setVal(targetVal);
+            if (lane < oldDelay.lane) { // lane 越小优先级越高，保留较高的优先级
+                oldDelay.lane = lane;
+            }
+            oldDelay.context = context; // 只保留最后一次 add 的上下文
+            if (execTs < oldDelay.getExecTs()) { // 新增的延迟更低，调整到更早的执行时间，支持插队
+                metrics.onReschedule();
+                if (scheduler.reschedule(oldDelay, execTs)) {
+                    queueEmpty.signal();
                 }
+            } else if (writeRateSketch != null && execTs > oldDelay.getExecTs()) {
+                // 自适应延迟下 key 变热，推迟到新的执行时间，推迟不需要唤醒分发线程
+                scheduler.reschedule(oldDelay, execTs);
+            }
+            if (journal != null) {
+                oldDelay.journalSeq = journal.appendUpsert(journalRecord, oldDelay.getExecTs());
             }
+            return true;
+        }
 
-            DelayWrapper<KEY, VAL> delayWrapper = new DelayWrapper<>(execTs, key, param);
-            priorityQueue.add(delayWrapper);
+        /**
+         * @param capTs 本次 add 请求的执行时间，自适应延迟时是上限
+         */
+        private void insert(KEY key, VAL param, long capTs, int lane, Object context, DelayBufferJournal.Record<KEY> journalRecord) {
+            long execTs = capTs;
+            if (writeRateSketch != null) {
+                execTs = adaptExecTs(key, capTs);
+                recordWrite(key);
+            }
+            DelayWrapper<KEY, VAL> delayWrapper = freeWrappers;
+            if (delayWrapper == null) {
+                delayWrapper = new DelayWrapper<>(execTs, key, param);
+            } else {
+                freeWrappers = delayWrapper.next;
+                freeWrapperCount--;
+                delayWrapper.reuse(execTs, key, param);
+            }
+            delayWrapper.capTs = capTs;
+            delayWrapper.lane = lane;
+            delayWrapper.context = context;
+            if (journal != null) {
+                delayWrapper.journalSeq = journal.appendUpsert(journalRecord, execTs);
+            }
             dataMap.put(key, delayWrapper);
-            // 新增加的元素在队首，唤醒分发线程
-            if (delayWrapper == priorityQueue.peek()) {
+            // 新增加的元素早于分发线程的等待时间，唤醒分发线程
+            if (scheduler.offer(delayWrapper)) {
                 queueEmpty.signal();
             }
-        } finally {
-            lock.unlock();
         }
-    }
 
-    /**
-     * 获取队首最老的一个元素，确认是否满足延时时间
-     */
-    private DelayWrapper<KEY, VAL> peekAndRemoveUpToTime() {
-        try {
-            DelayWrapper<KEY, VAL> wrapper;
-            do {
-                lock.lock();
-                try {
-                    boolean awaitStatus = true;
-                    wrapper = priorityQueue.peek();
-                    if (wrapper == null) {
-                        awaitStatus = queueEmpty.await(10, TimeUnit.SECONDS);
-                    } else {
-                        long upToTimeMills = wrapper.getExecTs();
-                        long needWait = upToTimeMills - System.currentTimeMillis();
-                        if (needWait > 0) { // 支持插队唤醒
-                            awaitStatus = queueEmpty.await(needWait, TimeUnit.MILLISECONDS);
+        /**
+         * 回放持久化日志中的数据，不受容量限制
+         */
+        private void recover(KEY key, VAL val, long execTs) {
+            DelayBufferJournal.Record<KEY> journalRecord = journal.encodeUpsert(key, val);
+            lock.lock();
+            try {
+                // 持久化日志不记录优先级类别，回放的数据都使用默认类别
+                if (!merge(key, val, execTs, defaultLane, null, journalRecord)) {
+                    insert(key, val, execTs, defaultLane, null, journalRecord);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return false 表示等待过程中被中断，中断标记会被保留
+         */
+        private boolean awaitNotFull(KEY key) {
+            long startNanos = System.nanoTime();
+            try {
+                while (dataMap.size() >= capacity && running) {
+                    try {
+                        boolean status = queueFull.await(10, TimeUnit.SECONDS);
+                        if (!status) { // false 由于超时导致， 需要重新等待
+                            log.warn("queueFull always full wait 10 seconds. key: {}", key);
                         }
+                    } catch (InterruptedException e) {
+                        log.info("thread was interrupt by system, need close. key: {}", key);
+                        Thread.currentThread().interrupt();
+                        return false;
                     }
-                    log.debug("peekAndRemoveUpToTime awaitStatus={}, wrapper is {} null", awaitStatus, wrapper == null ? "" : "not");
-                } finally {
-                    lock.unlock();
                 }
-            } while (wrapper == null || wrapper.getExecTs() > System.currentTimeMillis());
+                return true;
+            } finally {
+                metrics.onBlocked(System.nanoTime() - startNanos);
+            }
+        }
 
-            // 移除队首，返回数据，触发执行
+        /**
+         * 唤醒分发线程让它退出，最多等到 deadline
+         */
+        private void wakeUpAndJoin(long deadlineNanos) {
             lock.lock();
             try {
-                priorityQueue.remove(wrapper);
-                dataMap.remove(wrapper.getKey());
-                if (dataMap.size() < capacity) {
-                    queueFull.signal();
+                queueEmpty.signalAll();
+                // 阻塞在 add 上的线程醒来后会因为已经关闭而返回 REJECTED
+                queueFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+            if (remainingMillis <= 0) {
+                return;
+            }
+            try {
+                dispatcherThread.join(remainingMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * 不管是否到期，取出所有待执行的数据
+         */
+        private List<DelayWrapper<KEY, VAL>> drainAll() {
+            lock.lock();
+            try {
+                List<DelayWrapper<KEY, VAL>> all = new ArrayList<>(dataMap.size());
+                DelayWrapper<KEY, VAL> wrapper;
+                while ((wrapper = scheduler.pollFirst()) != null) {
+                    all.add(wrapper);
                 }
+                dataMap.clear();
+                queueFull.signalAll();
+                return all;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int size() {
+            lock.lock();
+            try {
+                return dataMap.size();
             } finally {
                 lock.unlock();
             }
-            return wrapper;
-        } catch (InterruptedException ie) {
-            throw new RuntimeException("thread was interrupt by system, need close");
-        } catch (Exception e) {
-            log.error("peek exception.", e);
-            throw new RuntimeException(e.getMessage());
+        }
+
+        /**
+         * 有空间后按顺序加入排队的 addAsync 请求，需要持有锁
+         */
+        private List<PendingAdd<KEY, VAL>> admitPending() {
+            if (pendingAdds.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<PendingAdd<KEY, VAL>> admitted = new ArrayList<>();
+            while (!pendingAdds.isEmpty() && dataMap.size() < capacity) {
+                PendingAdd<KEY, VAL> pendingAdd = pendingAdds.poll();
+                if (merge(pendingAdd.key, pendingAdd.val, pendingAdd.execTs, pendingAdd.lane, pendingAdd.context, pendingAdd.journalRecord)) {
+                    pendingAdd.status = AddStatus.MERGED;
+                } else {
+                    insert(pendingAdd.key, pendingAdd.val, pendingAdd.execTs, pendingAdd.lane, pendingAdd.context, pendingAdd.journalRecord);
+                    pendingAdd.status = AddStatus.ADDED;
+                }
+                admitted.add(pendingAdd);
+            }
+            return admitted;
+        }
+
+        private void rejectPending() {
+            List<PendingAdd<KEY, VAL>> rejected;
+            lock.lock();
+            try {
+                rejected = new ArrayList<>(pendingAdds);
+                pendingAdds.clear();
+            } finally {
+                lock.unlock();
+            }
+            rejected.forEach(pendingAdd -> pendingAdd.future.complete(AddStatus.REJECTED));
+        }
+
+        /**
+         * 上一批到期元素已经分发完，放回复用池
+         */
+        private void recycleDueList() {
+            for (DelayWrapper<KEY, VAL> wrapper : dueList) {
+                if (freeWrapperCount >= capacity) {
+                    break;
+                }
+                wrapper.clear();
+                wrapper.next = freeWrappers;
+                freeWrappers = wrapper;
+                freeWrapperCount++;
+            }
+            dueList.clear();
+        }
+
+        /**
+         * 等待直到有元素到期，在一次加锁内取出所有已经到期的元素。返回的列表在下一次调用时复用
+         */
+        private List<DelayWrapper<KEY, VAL>> drainUpToTime() {
+            List<PendingAdd<KEY, VAL>> admitted = Collections.emptyList();
+            lock.lock();
+            try {
+                recycleDueList();
+                while (running) {
+                    long now = System.currentTimeMillis();
+                    DelayWrapper<KEY, VAL> wrapper = scheduler.pollDue(now);
+                    if (wrapper != null) {
+                        do {
+                            dueList.add(wrapper);
+                            dataMap.remove(wrapper.getKey());
+                        } while ((wrapper = scheduler.pollDue(now)) != null);
+                        admitted = admitPending();
+                        if (dataMap.size() < capacity) {
+                            queueFull.signalAll();
+                        }
+                        if (priorityClasses.length > 1) {
+                            // 稳定排序，同一优先级内仍然按到期顺序
+                            dueList.sort(LANE_ORDER);
+                        }
+                        return dueList;
+                    }
+
+                    long nextWakeupTs = scheduler.nextWakeupTs(now);
+                    if (nextWakeupTs == Long.MAX_VALUE) {
+                        queueEmpty.await(10, TimeUnit.SECONDS);
+                    } else { // 支持插队唤醒
+                        queueEmpty.await(Math.max(nextWakeupTs - now, 1), TimeUnit.MILLISECONDS);
+                    }
+                }
+                return Collections.emptyList();
+            } catch (InterruptedException ie) {
+                throw new RuntimeException("thread was interrupt by system, need close");
+            } finally {
+                lock.unlock();
+                // future 的回调放在锁外执行
+                admitted.forEach(pendingAdd -> pendingAdd.future.complete(pendingAdd.status));
+            }
         }
     }
 
     /**
-     * 用于包装请求的参数
+     * {@link #shutdownGracefully} 的结果
      */
     @Getter
-    private static class DelayWrapper<KEY, VAL> implements Comparable<DelayWrapper<KEY, VAL>> {
-        private final long execTs;
+    public static class ShutdownReport<KEY> {
+        /**
+         * 关闭时立即分发的数量
+         */
+        private final int flushedCount;
+        /**
+         * 提交执行器失败被丢弃的 key
+         */
+        private final List<KEY> droppedKeys;
+        /**
+         * 超时时仍未执行完的任务数（批量模式下一个任务是一批），开启持久化日志时这些数据重启后会重新分发
+         */
+        private final int pendingTasks;
+
+        private ShutdownReport(int flushedCount, List<KEY> droppedKeys, int pendingTasks) {
+            this.flushedCount = flushedCount;
+            this.droppedKeys = droppedKeys;
+            this.pendingTasks = pendingTasks;
+        }
+    }
+
+    /**
+     * 排队等待加入的 addAsync 请求
+     */
+    private static class PendingAdd<KEY, VAL> {
         private final KEY key;
-        @Setter
-        private VAL val;
-        private Map<String, String> mdcContext;
+        private final VAL val;
+        private final long execTs;
+        private final int lane;
+        private final Object context;
+        private final DelayBufferJournal.Record<KEY> journalRecord;
+        private final CompletableFuture<AddStatus> future = new CompletableFuture<>();
+        private AddStatus status;
 
-        public DelayWrapper(long execTs, KEY key, VAL val) {
-            this.execTs = execTs;
+        private PendingAdd(KEY key, VAL val, long execTs, int lane, Object context, DelayBufferJournal.Record<KEY> journalRecord) {
             this.key = key;
             this.val = val;
+            this.execTs = execTs;
+            this.lane = lane;
+            this.context = context;
+            this.journalRecord = journalRecord;
         }
+    }
 
-        @Override
-        public int compareTo(@NonNull DelayWrapper<KEY, VAL> o) {
-            return ComparisonChain.start()
-                    .compare(this.execTs, o.execTs)
-                    .compare(this.key.toString(), o.key.toString())
-                    .result();
-        }
+    /**
+     * 提交给执行器的待消费值
+     */
+    private static class PendingConsume<VAL> {
+        private final VAL val;
+        private final long journalSeq;
+        private final Object context;
+        private final int lane;
 
+        private PendingConsume(VAL val, long journalSeq, Object context, int lane) {
+            this.val = val;
+            this.journalSeq = journalSeq;
+            this.context = context;
+            this.lane = lane;
+        }
     }
 
     public static <KEY, VAL> Builder<KEY, VAL> newBuilder() {
@@ -285,17 +1045,186 @@ public final class BlockingDelayBufferTrigger<KEY, VAL> {
         private BiConsumer<KEY, VAL> upToTimeConsumer;
         private BiFunction<VAL, VAL, VAL> dupValConsumer;
         /**
-         * 默认5个执行线程
+         * 默认5个执行线程，仅 {@link ExecutionMode#PLATFORM_POOL} 和批量模式生效
          */
         private int executorCount = 5;
+        /**
+         * {@link ExecutionMode#VIRTUAL_THREAD} 下同时执行的消费数上限，用来保护下游而不是限制线程，默认 10000，小于等于 0 表示不限制
+         */
+        private int virtualThreadConcurrency = 10000;
+        /**
+         * 分片数量，默认 1 即单锁模式；多生产者高并发 add 时可以调大，总 capacity 会平均分配到每个分片
+         */
+        private int shardCount = 1;
+        /**
+         * 延迟调度后端，默认使用优先队列
+         */
+        private SchedulerType schedulerType = SchedulerType.PRIORITY_QUEUE;
+        /**
+         * 时间轮的 tick 精度，仅 {@link SchedulerType#TIMING_WHEEL} 生效
+         */
+        private long wheelTickMs = 10;
+        /**
+         * 设置后进入批量模式：每次唤醒取出所有到期元素，按执行通道分组后整批回调，替代 upToTimeConsumer。
+         * 同一个 key 总是落在同一个通道，通道数等于 executorCount
+         */
+        private BiConsumer<List<KEY>, List<VAL>> batchConsumer;
+        /**
+         * 批量模式下单次回调的最大元素个数
+         */
+        private int maxBatchSize = 1000;
+        /**
+         * 容量满时的处理策略，默认阻塞等待
+         */
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+        /**
+         * {@link OverflowPolicy#SPILL} 时接收溢出数据的二级存储
+         */
+        private BiConsumer<KEY, VAL> spillConsumer;
+        /**
+         * 可选的持久化日志，见 {@link DelayBufferJournal#open}。build 时回放上次遗留的数据，shutdown 时一起关闭
+         */
+        private DelayBufferJournal<KEY, VAL> journal;
+        /**
+         * 指标埋点，默认不采集，可以使用 {@link HistogramDelayBufferMetrics}
+         */
+        private DelayBufferMetrics metrics = DelayBufferMetrics.NOOP;
+        /**
+         * 优先级类别及其权重，每个类别有独立的执行线程池，executorCount 按权重用最大余数法分配到各个类别，总数等于 executorCount；
+         * 每个类别至少 1 个线程，类别数多于 executorCount 时每个类别 1 个线程。
+         * 没有配置 {@link #DEFAULT_PRIORITY_CLASS} 时它的权重为 1。批量模式下不支持
+         */
+        private Map<String, Integer> priorityWeights = Collections.emptyMap();
+        /**
+         * 开启自适应延迟：add 传入的延迟作为上限，按每个 key 最近的写入次数在 adaptiveMinDelayMs 和上限之间线性取值。
+         * 已在队列中的 key 变热后执行时间会随之推迟，但不超过上限
+         */
+        private boolean adaptiveDelay;
+        /**
+         * 自适应延迟的下限，只写过一次的冷 key 使用该延迟，默认 1 秒：一次突发写入的前几次仍然能合并，不会一加入就分发
+         */
+        private long adaptiveMinDelayMs = TimeUnit.SECONDS.toMillis(1);
+        /**
+         * 一个统计窗口内写入达到该次数的 key 视为热 key，使用 add 传入的完整延迟
+         */
+        private int adaptiveHotCount = 64;
+        /**
+         * 写入次数的统计窗口，每过一个窗口计数减半
+         */
+        private long adaptiveWindowMs = TimeUnit.MINUTES.toMillis(1);
+        /**
+         * add 时捕获调用线程的上下文并在执行线程上恢复，默认不传递，需要 MDC 时使用 {@link MdcContextPropagator}
+         */
+        private ContextPropagator contextPropagator = ContextPropagator.NOOP;
+        /**
+         * 执行模式，默认运行时支持虚拟线程时自动使用，批量模式下不生效
+         */
+        private ExecutionMode executionMode = ExecutionMode.AUTO;
 
         public BlockingDelayBufferTrigger<KEY, VAL> build() {
             Preconditions.checkArgument(capacity > 100, "capacity is too small");
-            return new BlockingDelayBufferTrigger<>(threadName,
-                    capacity, executorCount, upToTimeConsumer, dupValConsumer
-            );
+            Preconditions.checkArgument(executorCount > 0, "executorCount must be positive");
+            Preconditions.checkArgument(shardCount > 0, "shardCount must be positive");
+            Preconditions.checkArgument(wheelTickMs > 0, "wheelTickMs must be positive");
+            Preconditions.checkArgument(upToTimeConsumer != null || batchConsumer != null, "consumer is required");
+            Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+            Preconditions.checkArgument(overflowPolicy != OverflowPolicy.SPILL || spillConsumer != null, "spillConsumer is required");
+            Preconditions.checkNotNull(metrics, "metrics is required");
+            Preconditions.checkNotNull(contextPropagator, "contextPropagator is required");
+            Preconditions.checkArgument(adaptiveMinDelayMs >= 0, "adaptiveMinDelayMs must not be negative");
+            Preconditions.checkArgument(adaptiveHotCount > 0, "adaptiveHotCount must be positive");
+            Preconditions.checkArgument(adaptiveWindowMs > 0, "adaptiveWindowMs must be positive");
+            Preconditions.checkArgument(priorityWeights.isEmpty() || batchConsumer == null, "priority class is not supported in batch mode");
+            Preconditions.checkArgument(priorityWeights.values().stream().allMatch(weight -> weight != null && weight > 0),
+                    "priority weight must be positive");
+            Preconditions.checkArgument(executionMode != ExecutionMode.VIRTUAL_THREAD || VirtualThreads.isSupported(),
+                    "virtual thread requires java 21+");
+            return new BlockingDelayBufferTrigger<>(this);
         }
     }
 
+    /**
+     * 延迟调度后端
+     */
+    public enum SchedulerType {
+        /**
+         * 索引堆实现的优先队列，插入、插队、删除都是 O(log n)，到期精度为毫秒
+         */
+        PRIORITY_QUEUE,
+        /**
+         * 分层哈希时间轮，插入、插队、删除都是 O(1)，适合大量 key 长延迟的场景，到期精度为 wheelTickMs
+         */
+        TIMING_WHEEL,
+    }
+
+    /**
+     * 到期 key 的执行方式
+     */
+    public enum ExecutionMode {
+        /**
+         * 运行时支持虚拟线程（Java 21+）时使用 {@link #VIRTUAL_THREAD}，否则使用 {@link #PLATFORM_POOL}
+         */
+        AUTO,
+        /**
+         * executorCount 个平台线程组成的去重线程池，同一个 key 串行执行，执行期间的重复分发用 dupValFunc 合并为一次
+         */
+        PLATFORM_POOL,
+        /**
+         * 分发线程和消费都使用虚拟线程，每个到期 key 一个虚拟线程，同时执行的数量不超过 virtualThreadConcurrency，不受 executorCount 限制。
+         * 同一个 key 串行执行，执行期间的重复分发用 dupValFunc 合并为一次
+         */
+        VIRTUAL_THREAD,
+    }
+
+    /**
+     * 容量满时新 key 的处理策略，已存在的 key 总是直接 merge，不受容量限制
+     */
+    public enum OverflowPolicy {
+        /**
+         * add 阻塞等待；tryAdd 直接拒绝；addAsync 排队等待
+         */
+        BLOCK,
+        /**
+         * 直接拒绝新 key
+         */
+        REJECT,
+        /**
+         * 丢弃执行时间最早的 key，为新 key 腾出空间。{@link SchedulerType#TIMING_WHEEL} 下“最早”是近似的，见 {@link DelayScheduler#pollFirst}
+         */
+        DROP_OLDEST,
+        /**
+         * 由调用线程立即分发执行时间最早的 key，为新 key 腾出空间。{@link SchedulerType#TIMING_WHEEL} 下“最早”是近似的，见 {@link DelayScheduler#pollFirst}
+         */
+        CONSUME_EARLIEST,
+        /**
+         * 新 key 交给 spillConsumer 写入二级存储
+         */
+        SPILL,
+    }
+
+    /**
+     * add 的结果
+     */
+    public enum AddStatus {
+        ADDED,
+        /**
+         * key 已存在，和已有的值合并
+         */
+        MERGED,
+        REJECTED,
+        /**
+         * 已加入，同时丢弃了执行时间最早的 key
+         */
+        DROPPED_OLDEST,
+        /**
+         * 已加入，同时提前分发了执行时间最早的 key
+         */
+        CONSUMED_EARLIEST,
+        /**
+         * 交给了 spillConsumer
+         */
+        SPILLED,
+    }
+
 
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package com.highestpeak.gist.concurrent.util;
+
+/**
+ * 把调用线程的上下文（MDC、trace 等）传递到 {@link BlockingDelayBufferTrigger} 的执行线程
+ * <p>
+ * add 时在调用线程上 {@link #capture}，同一个 key 合并时只保留最后一次 add 捕获的上下文；
+ * 执行时在执行线程上 {@link #attach}，consumer 执行完后 {@link #detach} 恢复执行线程原来的上下文。
+ * 分发线程不会接触上下文。批量模式下一批数据的上下文各不相同，不做传递。
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+public interface ContextPropagator {
+
+    /**
+     * 不传递任何上下文，capture 返回 null，执行线程上不会调用 attach/detach
+     */
+    ContextPropagator NOOP = new ContextPropagator() {
+        @Override
+        public Object capture() {
+            return null;
+        }
+
+        @Override
+        public Object attach(Object context) {
+            return null;
+        }
+
+        @Override
+        public void detach(Object previous) {
+        }
+    };
+
+    /**
+     * 在 add 的调用线程上捕获当前上下文
+     *
+     * @return null 表示没有需要传递的上下文
+     */
+    Object capture();
+
+    /**
+     * 在执行线程上设置 capture 得到的上下文
+     *
+     * @return 执行线程原来的上下文，会传给 {@link #detach}
+     */
+    Object attach(Object context);
+
+    /**
+     * consumer 执行完后恢复执行线程原来的上下文
+     */
+    void detach(Object previous);
+}
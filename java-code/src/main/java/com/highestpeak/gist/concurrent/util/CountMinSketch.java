@@ -0,0 +1,95 @@
+package com.highestpeak.gist.concurrent.util;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * 估算 key 出现次数的 Count-Min Sketch，固定内存，不保存 key 本身
+ * <p>
+ * 4 行计数器，每行用不同的种子哈希到一个槽位，估计值取 4 个槽位中的最小值，只会高估不会低估。
+ * 更新时只增加等于最小值的槽位（conservative update），减少哈希冲突带来的高估。
+ * 每过 agingWindowMs 所有计数器减半，让估计值反映最近的写入频率，而不是历史累计。
+ * <p>
+ * 非线程安全，由调用方加锁
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+final class CountMinSketch {
+
+    private static final int DEPTH = 4;
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+    private static final int MAX_WIDTH = 1 << 16;
+
+    private final int[][] counters;
+    private final int mask;
+    private final long agingWindowMs;
+    private long lastAgingTs;
+
+    /**
+     * @param expectedKeys 预计同时活跃的 key 数量，用于决定每行宽度
+     */
+    CountMinSketch(int expectedKeys, long agingWindowMs) {
+        Preconditions.checkArgument(agingWindowMs > 0, "agingWindowMs must be positive");
+        int width = Integer.highestOneBit(Math.max(Math.min(expectedKeys, MAX_WIDTH), 64) - 1) << 1;
+        this.counters = new int[DEPTH][width];
+        this.mask = width - 1;
+        this.agingWindowMs = agingWindowMs;
+        this.lastAgingTs = System.currentTimeMillis();
+    }
+
+    /**
+     * 估计已经出现的次数，不计入本次
+     */
+    int estimate(int hash, long now) {
+        if (now - lastAgingTs >= agingWindowMs) {
+            age(now);
+        }
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, counters[row][index(hash, row)]);
+        }
+        return min;
+    }
+
+    /**
+     * 记录一次出现
+     *
+     * @return 包含本次在内的估计次数
+     */
+    int increment(int hash, long now) {
+        if (now - lastAgingTs >= agingWindowMs) {
+            age(now);
+        }
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, counters[row][index(hash, row)]);
+        }
+        if (min == Integer.MAX_VALUE) {
+            return min;
+        }
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(hash, row);
+            if (counters[row][index] == min) {
+                counters[row][index]++;
+            }
+        }
+        return min + 1;
+    }
+
+    private int index(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void age(long now) {
+        // 跨过多个窗口时多次减半，长时间没有写入的计数器会衰减到 0
+        long windows = (now - lastAgingTs) / agingWindowMs;
+        int shift = (int) Math.min(windows, 31);
+        for (int[] row : counters) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>>= shift;
+            }
+        }
+        lastAgingTs += windows * agingWindowMs;
+    }
+}
@@ -0,0 +1,14 @@
+package com.highestpeak.gist.concurrent.util;
+
+/**
+ * {@link BlockingDelayBufferTrigger} 的 key/val 需要落到磁盘或者外部存储时使用的编解码
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+public interface DelayBufferCodec<T> {
+
+    String encode(T value);
+
+    T decode(String text);
+}
@@ -0,0 +1,574 @@
+package com.highestpeak.gist.concurrent.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import com.google.common.base.Preconditions;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@link BlockingDelayBufferTrigger} 待执行数据的追加写日志，进程重启后回放未分发的数据
+ * <p>
+ * 1. 每次加入/merge 记录一条 UPSERT（这次 add 的 val 和合并后的 execTs），消费完成后记录一条 DISPATCH，
+ * 回放时按 seq 顺序把同一个 key 存活的 UPSERT 重新 add 一遍，由 dupValFunc 重新合并；
+ * 2. 每条 UPSERT 带一个递增的 seq，DISPATCH 只抵消 seq 不大于它的 UPSERT，key 在消费过程中被重新加入也不会被误删；
+ * 3. 记录在调用线程上编码（UPSERT 在分片锁外），加锁期间只分配 seq 并放入队列；唯一的写线程负责写入按固定大小内存映射的 segment、
+ * 计算 crc、切换 segment，并按 flushIntervalMs 统一 force 到磁盘（group commit）。
+ * 进程崩溃最多丢失还在队列中的记录，机器掉电最多丢 flushIntervalMs 内的数据；
+ * 4. 最老的 segment 中没有存活的记录后删除并立即解除映射，只从头部删除，保证回放时后面的 DISPATCH 记录不会先于前面的 UPSERT 被删除。
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+@Slf4j
+public final class DelayBufferJournal<KEY, VAL> implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final byte TYPE_UPSERT = 1;
+    private static final byte TYPE_DISPATCH = 2;
+    /**
+     * 每条记录的头部：payload 长度 + crc32
+     */
+    private static final int RECORD_HEADER_BYTES = 8;
+    /**
+     * payload 中 seq 和 execTs 的偏移，UPSERT 先编码，加入队列时再填入
+     */
+    private static final int SEQ_OFFSET = 1;
+    private static final int EXEC_TS_OFFSET = 9;
+
+    private static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+    private static final long DEFAULT_FLUSH_INTERVAL_MS = 50;
+
+    /**
+     * 解除 segment 的内存映射，不依赖 GC 回收 MappedByteBuffer
+     */
+    private static final Consumer<MappedByteBuffer> UNMAPPER = newUnmapper();
+
+    private final Path dir;
+    private final DelayBufferCodec<KEY> keyCodec;
+    private final DelayBufferCodec<VAL> valCodec;
+    private final int segmentBytes;
+    private final long flushIntervalMs;
+
+    private final AtomicLong nextSeq = new AtomicLong(1);
+    private final ConcurrentLinkedQueue<Record<KEY>> queue = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+    private volatile boolean writerParked;
+    private Thread writerThread;
+
+    // 以下字段只在写线程上访问（recover 期间在调用 recover 的线程上，之后通过 Thread.start 交给写线程）
+    /**
+     * 从老到新的 segment，最后一个是正在写入的
+     */
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    /**
+     * 每个存活 key 的 UPSERT 所在的 segment，按 seq 顺序
+     */
+    private final Map<KEY, ArrayDeque<Run>> liveKeys = new HashMap<>();
+    private Segment active;
+    private boolean dirty;
+
+    private DelayBufferJournal(Path dir, DelayBufferCodec<KEY> keyCodec, DelayBufferCodec<VAL> valCodec,
+            int segmentBytes, long flushIntervalMs) {
+        this.dir = dir;
+        this.keyCodec = keyCodec;
+        this.valCodec = valCodec;
+        this.segmentBytes = segmentBytes;
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    public static <KEY, VAL> DelayBufferJournal<KEY, VAL> open(Path dir, DelayBufferCodec<KEY> keyCodec, DelayBufferCodec<VAL> valCodec) {
+        return open(dir, keyCodec, valCodec, DEFAULT_SEGMENT_BYTES, DEFAULT_FLUSH_INTERVAL_MS);
+    }
+
+    public static <KEY, VAL> DelayBufferJournal<KEY, VAL> open(Path dir, DelayBufferCodec<KEY> keyCodec, DelayBufferCodec<VAL> valCodec,
+            int segmentBytes, long flushIntervalMs) {
+        Preconditions.checkNotNull(dir, "dir is required");
+        Preconditions.checkNotNull(keyCodec, "keyCodec is required");
+        Preconditions.checkNotNull(valCodec, "valCodec is required");
+        Preconditions.checkArgument(segmentBytes > RECORD_HEADER_BYTES, "segmentBytes is too small");
+        Preconditions.checkArgument(flushIntervalMs > 0, "flushIntervalMs must be positive");
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new DelayBufferJournal<>(dir, keyCodec, valCodec, segmentBytes, flushIntervalMs);
+    }
+
+    /**
+     * 回放上次进程遗留的未分发数据。回放的数据由 replayer 重新加入 trigger（会重新写入新的 segment），之后删除旧的 segment
+     */
+    synchronized void recover(Replayer<KEY, VAL> replayer) {
+        Preconditions.checkState(active == null, "journal already recovered");
+        List<Path> oldSegmentPaths = listSegments();
+        Map<String, ArrayDeque<RecoveredEntry>> recovered = new HashMap<>();
+        long maxSegmentId = 0;
+        for (Path path : oldSegmentPaths) {
+            maxSegmentId = Math.max(maxSegmentId, segmentId(path));
+            readSegment(path, recovered);
+        }
+
+        active = newSegment(maxSegmentId + 1);
+        int entries = 0;
+        for (Map.Entry<String, ArrayDeque<RecoveredEntry>> entry : recovered.entrySet()) {
+            KEY key = keyCodec.decode(entry.getKey());
+            for (RecoveredEntry recoveredEntry : entry.getValue()) {
+                replayer.replay(key, valCodec.decode(recoveredEntry.val), recoveredEntry.execTs);
+                entries++;
+            }
+        }
+        // 回放的数据写入新 segment 并落盘后才能删除旧的
+        writeQueued();
+        force(active);
+        for (Path path : oldSegmentPaths) {
+            deleteQuietly(path);
+        }
+        log.info("journal recovered. dir: {}, segments: {}, keys: {}, entries: {}", dir, oldSegmentPaths.size(), recovered.size(), entries);
+
+        writerThread = new Thread(this::writeLoop, "delay-buffer-journal-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * 编码一次加入或者 merge，在分片锁外调用。val 是这次 add 的值，不是合并后的值
+     */
+    Record<KEY> encodeUpsert(KEY key, VAL val) {
+        byte[] keyBytes = keyCodec.encode(key).getBytes(StandardCharsets.UTF_8);
+        byte[] valBytes = valCodec.encode(val).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(1 + 8 + 8 + 4 + keyBytes.length + 4 + valBytes.length);
+        payload.put(TYPE_UPSERT).putLong(0).putLong(0)
+                .putInt(keyBytes.length).put(keyBytes)
+                .putInt(valBytes.length).put(valBytes);
+        return new Record<>(key, payload.array());
+    }
+
+    /**
+     * 分配 seq 并放入写队列，在分片锁内调用，保证同一个 key 的 UPSERT 按 seq 顺序入队
+     *
+     * @param execTs 合并后的执行时间
+     * @return 这条记录的 seq，分发完成后用于 {@link #appendDispatch}
+     */
+    long appendUpsert(Record<KEY> record, long execTs) {
+        if (closed) {
+            return 0;
+        }
+        long seq = nextSeq.getAndIncrement();
+        putLong(record.payload, SEQ_OFFSET, seq);
+        putLong(record.payload, EXEC_TS_OFFSET, execTs);
+        record.seq = seq;
+        enqueue(record);
+        return seq;
+    }
+
+    /**
+     * 记录 key 在 seq 及之前的数据已经分发
+     */
+    void appendDispatch(KEY key, long seq) {
+        if (closed || seq <= 0) {
+            return;
+        }
+        byte[] keyBytes = keyCodec.encode(key).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(1 + 8 + 4 + keyBytes.length);
+        payload.put(TYPE_DISPATCH).putLong(seq).putInt(keyBytes.length).put(keyBytes);
+        Record<KEY> record = new Record<>(key, payload.array());
+        record.seq = seq;
+        enqueue(record);
+    }
+
+    /**
+     * 等待写线程写完队列中的记录、落盘并解除所有映射
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Thread writer = writerThread;
+        if (writer == null) {
+            return;
+        }
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueue(Record<KEY> record) {
+        queue.offer(record);
+        if (writerParked) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    private void writeLoop() {
+        long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        long lastForceNanos = System.nanoTime();
+        while (true) {
+            boolean wrote = writeQueued();
+            long now = System.nanoTime();
+            if (dirty && now - lastForceNanos >= flushIntervalNanos) {
+                force(active);
+                dirty = false;
+                lastForceNanos = now;
+            }
+            if (closed && queue.isEmpty()) {
+                break;
+            }
+            if (!wrote) {
+                // 先标记 parked 再检查一次队列，和 enqueue 中先入队再检查 parked 配合，不会丢失唤醒
+                writerParked = true;
+                if (queue.isEmpty() && !closed) {
+                    LockSupport.parkNanos(this, dirty ? flushIntervalNanos - (now - lastForceNanos) : flushIntervalNanos);
+                }
+                writerParked = false;
+            }
+        }
+        force(active);
+        for (Segment segment : segments) {
+            release(segment);
+        }
+        segments.clear();
+    }
+
+    /**
+     * 写入队列中的所有记录，只在写线程（或者 recover 期间）调用
+     *
+     * @return 是否写入了记录
+     */
+    private boolean writeQueued() {
+        boolean wrote = false;
+        Record<KEY> record;
+        while ((record = queue.poll()) != null) {
+            try {
+                if (record.payload[0] == TYPE_UPSERT) {
+                    writeUpsert(record);
+                } else {
+                    writeDispatch(record);
+                }
+                wrote = true;
+            } catch (Exception e) {
+                log.warn("journal write exception. key: {}, seq: {}", record.key, record.seq, e);
+            }
+        }
+        return wrote;
+    }
+
+    private void writeUpsert(Record<KEY> record) {
+        Segment segment = write(record.payload);
+        segment.liveCount++;
+        ArrayDeque<Run> runs = liveKeys.computeIfAbsent(record.key, key -> new ArrayDeque<>(2));
+        Run last = runs.peekLast();
+        if (last != null && last.segment == segment) {
+            last.count++;
+            last.lastSeq = record.seq;
+        } else {
+            runs.addLast(new Run(segment, record.seq));
+        }
+    }
+
+    private void writeDispatch(Record<KEY> record) {
+        ArrayDeque<Run> runs = liveKeys.get(record.key);
+        if (runs == null) {
+            // 没有存活的 UPSERT，不需要记录
+            return;
+        }
+        write(record.payload);
+        // 只释放完全被覆盖的 run；部分被覆盖的 run 继续占用它的 segment，直到这个 key 下一次分发
+        Run first;
+        while ((first = runs.peekFirst()) != null && first.lastSeq <= record.seq) {
+            runs.pollFirst();
+            first.segment.liveCount -= first.count;
+        }
+        if (runs.isEmpty()) {
+            liveKeys.remove(record.key);
+        }
+        releaseHead();
+    }
+
+    private Segment write(byte[] payload) {
+        int recordBytes = RECORD_HEADER_BYTES + payload.length;
+        // 末尾至少要留出一个 int 的 0 作为结束标记
+        Preconditions.checkArgument(recordBytes + 4 <= segmentBytes, "record is larger than segment");
+        if (active.buffer.remaining() < recordBytes + 4) {
+            // 切换 segment 时 force 旧的，在写线程上执行，不阻塞调用方
+            force(active);
+            active = newSegment(active.id + 1);
+            releaseHead();
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(payload, 0, payload.length);
+        active.buffer.putInt(payload.length).putInt((int) crc32.getValue()).put(payload);
+        dirty = true;
+        return active;
+    }
+
+    /**
+     * 只从最老的 segment 开始删除
+     */
+    private void releaseHead() {
+        Segment head;
+        while ((head = segments.peekFirst()) != null && head != active && head.liveCount <= 0) {
+            segments.pollFirst();
+            release(head);
+            deleteQuietly(head.path);
+        }
+    }
+
+    private Segment newSegment(long id) {
+        Path path = dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        try {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            Segment segment = new Segment(id, path, channel, buffer);
+            segments.addLast(segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void readSegment(Path path, Map<String, ArrayDeque<RecoveredEntry>> recovered) {
+        MappedByteBuffer buffer = null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+                int length = buffer.getInt();
+                int crc = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                CRC32 crc32 = new CRC32();
+                crc32.update(payload, 0, length);
+                if ((int) crc32.getValue() != crc) {
+                    // 写了一半的记录，后面的内容不可信
+                    log.warn("journal record crc mismatch, stop reading. path: {}", path);
+                    break;
+                }
+                applyRecord(ByteBuffer.wrap(payload), recovered);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (buffer != null) {
+                UNMAPPER.accept(buffer);
+            }
+        }
+    }
+
+    private void applyRecord(ByteBuffer payload, Map<String, ArrayDeque<RecoveredEntry>> recovered) {
+        byte type = payload.get();
+        long seq = payload.getLong();
+        if (seq >= nextSeq.get()) {
+            nextSeq.set(seq + 1);
+        }
+        if (type == TYPE_UPSERT) {
+            long execTs = payload.getLong();
+            String key = readString(payload);
+            String val = readString(payload);
+            recovered.computeIfAbsent(key, k -> new ArrayDeque<>()).addLast(new RecoveredEntry(seq, execTs, val));
+        } else if (type == TYPE_DISPATCH) {
+            String key = readString(payload);
+            ArrayDeque<RecoveredEntry> entries = recovered.get(key);
+            if (entries == null) {
+                return;
+            }
+            // 同一个 key 的 UPSERT 按 seq 顺序写入，DISPATCH 抵消的是一个前缀
+            while (!entries.isEmpty() && entries.peekFirst().seq <= seq) {
+                entries.pollFirst();
+            }
+            if (entries.isEmpty()) {
+                recovered.remove(key);
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private List<Path> listSegments() {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(paths::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        paths.sort(null);
+        return paths;
+    }
+
+    private static long segmentId(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static void force(Segment segment) {
+        try {
+            segment.buffer.force();
+        } catch (Exception e) {
+            log.warn("journal force exception. path: {}", segment.path, e);
+        }
+    }
+
+    /**
+     * 关闭文件并解除映射，之后不能再访问 segment.buffer
+     */
+    private static void release(Segment segment) {
+        try {
+            segment.channel.close();
+        } catch (IOException e) {
+            log.warn("journal close exception. path: {}", segment.path, e);
+        }
+        UNMAPPER.accept(segment.buffer);
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("journal delete exception. path: {}", path, e);
+        }
+    }
+
+    /**
+     * Java 9+ 使用 Unsafe.invokeCleaner，Java 8 使用 DirectBuffer.cleaner().clean()，都不可用时退化为等待 GC
+     */
+    private static Consumer<MappedByteBuffer> newUnmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            return buffer -> invokeQuietly(invokeCleaner, unsafe, buffer);
+        } catch (NoSuchMethodException e) {
+            try {
+                Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+                Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+                return buffer -> {
+                    Object bufferCleaner = invokeQuietly(cleaner, buffer);
+                    if (bufferCleaner != null) {
+                        invokeQuietly(clean, bufferCleaner);
+                    }
+                };
+            } catch (ReflectiveOperationException ex) {
+                log.warn("journal unmap is not supported, segments are released by gc.", ex);
+                return buffer -> { };
+            }
+        } catch (ReflectiveOperationException e) {
+            log.warn("journal unmap is not supported, segments are released by gc.", e);
+            return buffer -> { };
+        }
+    }
+
+    private static Object invokeQuietly(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (ReflectiveOperationException e) {
+            log.warn("journal unmap exception.", e);
+            return null;
+        }
+    }
+
+    /**
+     * 回放数据的接收方
+     */
+    interface Replayer<KEY, VAL> {
+        void replay(KEY key, VAL val, long execTs);
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        /**
+         * 这个 segment 中还没有被 DISPATCH 抵消的 UPSERT 数量
+         */
+        private int liveCount;
+
+        private Segment(long id, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * 同一个 key 在同一个 segment 中连续的 UPSERT
+     */
+    private static final class Run {
+        private final Segment segment;
+        private int count = 1;
+        private long lastSeq;
+
+        private Run(Segment segment, long lastSeq) {
+            this.segment = segment;
+            this.lastSeq = lastSeq;
+        }
+    }
+
+    /**
+     * 编码好的记录，UPSERT 的 seq 和 execTs 在入队时填入 payload
+     */
+    static final class Record<KEY> {
+        private final KEY key;
+        private final byte[] payload;
+        private long seq;
+
+        private Record(KEY key, byte[] payload) {
+            this.key = key;
+            this.payload = payload;
+        }
+    }
+
+    private static final class RecoveredEntry {
+        private final long seq;
+        private final long execTs;
+        private final String val;
+
+        private RecoveredEntry(long seq, long execTs, String val) {
+            this.seq = seq;
+            this.execTs = execTs;
+            this.val = val;
+        }
+    }
+}
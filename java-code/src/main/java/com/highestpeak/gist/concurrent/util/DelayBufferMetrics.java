@@ -0,0 +1,58 @@
+package com.highestpeak.gist.concurrent.util;
+
+import java.util.function.IntSupplier;
+
+import com.highestpeak.gist.concurrent.util.BlockingDelayBufferTrigger.AddStatus;
+
+/**
+ * {@link BlockingDelayBufferTrigger} 的指标埋点，默认全部为空实现，{@link #NOOP} 没有任何开销
+ * <p>
+ * {@link #onReschedule} 和 {@link #onBlocked} 在分片锁内调用，实现需要足够轻量（计数器、无锁直方图），不能阻塞；
+ * 其他回调都在锁外调用：{@link #onAdd} 在 add 返回前（排队的 addAsync 在加入时），{@link #onDispatch} 在提交执行器前，{@link #onConsume} 在执行线程上
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+public interface DelayBufferMetrics {
+
+    DelayBufferMetrics NOOP = new DelayBufferMetrics() {
+    };
+
+    /**
+     * trigger 构建时注册当前待执行 key 数量的读取方法
+     */
+    default void registerQueueDepth(IntSupplier queueDepth) {
+    }
+
+    /**
+     * 每次 add/tryAdd/addAsync 完成
+     */
+    default void onAdd(AddStatus status) {
+    }
+
+    /**
+     * 已存在的 key 收到更短的延迟，提前了执行时间。在分片锁内调用
+     */
+    default void onReschedule() {
+    }
+
+    /**
+     * add 因为容量满阻塞等待的时间。在分片锁内调用
+     */
+    default void onBlocked(long blockedNanos) {
+    }
+
+    /**
+     * 一个 key 被分发，lagMs 为实际分发时间减去计划的 execTs
+     *
+     * @param priorityClass key 所属的优先级类别，没有指定时为 {@link BlockingDelayBufferTrigger#DEFAULT_PRIORITY_CLASS}
+     */
+    default void onDispatch(String priorityClass, long lagMs) {
+    }
+
+    /**
+     * 一次 consumer 调用结束，批量模式下 size 为本批数量，否则为 1
+     */
+    default void onConsume(int size, long costNanos, boolean success) {
+    }
+}
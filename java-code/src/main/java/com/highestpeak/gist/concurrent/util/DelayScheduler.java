@@ -0,0 +1,46 @@
+package com.highestpeak.gist.concurrent.util;
+
+/**
+ * {@link BlockingDelayBufferTrigger} 的延迟调度后端，所有方法都在分片锁内调用，实现不需要考虑线程安全
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+interface DelayScheduler<KEY, VAL> {
+
+    /**
+     * 加入一个新元素
+     *
+     * @return true 表示新元素可能早于分发线程当前的等待时间，需要唤醒分发线程
+     */
+    boolean offer(DelayWrapper<KEY, VAL> wrapper);
+
+    /**
+     * 将已经在队列中的元素调整到新的执行时间
+     *
+     * @return 同 {@link #offer}
+     */
+    boolean reschedule(DelayWrapper<KEY, VAL> wrapper, long execTs);
+
+    void remove(DelayWrapper<KEY, VAL> wrapper);
+
+    /**
+     * 取出一个已经到期的元素，没有到期元素时返回 null
+     */
+    DelayWrapper<KEY, VAL> pollDue(long now);
+
+    /**
+     * 不管是否到期，取出执行时间最早的元素，队列为空时返回 null。用于容量满时的淘汰策略
+     * <p>
+     * 精度由实现决定：{@link IndexedHeapDelayScheduler} 是精确的；{@link HashedWheelDelayScheduler} 是近似的，
+     * 有已到期的元素时返回其中任意一个，否则返回的元素可能晚于真正最早的元素，误差小于它所在层一圈的跨度（第 n 层为 64^(n+1) 个 tick）
+     */
+    DelayWrapper<KEY, VAL> pollFirst();
+
+    /**
+     * 分发线程下一次需要检查的时间点，队列为空时返回 {@link Long#MAX_VALUE}
+     */
+    long nextWakeupTs(long now);
+
+    int size();
+}
@@ -0,0 +1,81 @@
+package com.highestpeak.gist.concurrent.util;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 用于包装 {@link BlockingDelayBufferTrigger} 请求的参数，同时携带各个 {@link DelayScheduler} 实现需要的侵入式字段
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+class DelayWrapper<KEY, VAL> {
+    @Getter
+    @Setter
+    private long execTs;
+    @Getter
+    private KEY key;
+    @Getter
+    @Setter
+    private VAL val;
+    /**
+     * {@link ContextPropagator#capture} 得到的上下文，合并时只保留最后一次 add 的
+     */
+    Object context;
+
+    /**
+     * 最后一次写入持久化日志的 seq，没有开启日志时为 0
+     */
+    long journalSeq;
+
+    /**
+     * 各次 add 请求的执行时间中最早的，开启自适应延迟时 execTs 推迟不会超过它
+     */
+    long capTs;
+
+    /**
+     * 优先级类别对应的 lane，越小优先级越高
+     */
+    int lane;
+
+    /**
+     * 在索引堆中的下标，不在堆中时为 -1
+     */
+    int heapIndex = -1;
+    /**
+     * 时间轮使用的双向链表指针，以及当前所在的槽位，支持 O(1) 删除。对象在复用池中时 next 用作空闲链表指针
+     */
+    DelayWrapper<KEY, VAL> prev;
+    DelayWrapper<KEY, VAL> next;
+    HashedWheelDelayScheduler.Bucket<KEY, VAL> bucket;
+
+    DelayWrapper(long execTs, KEY key, VAL val) {
+        this.execTs = execTs;
+        this.key = key;
+        this.val = val;
+    }
+
+    /**
+     * 从复用池中取出后重新初始化
+     */
+    void reuse(long execTs, KEY key, VAL val) {
+        this.execTs = execTs;
+        this.key = key;
+        this.val = val;
+        this.journalSeq = 0;
+        this.next = null;
+    }
+
+    /**
+     * 放回复用池前释放引用，避免池中的对象拖住业务数据
+     */
+    void clear() {
+        this.key = null;
+        this.val = null;
+        this.context = null;
+        this.heapIndex = -1;
+        this.prev = null;
+        this.next = null;
+        this.bucket = null;
+    }
+}
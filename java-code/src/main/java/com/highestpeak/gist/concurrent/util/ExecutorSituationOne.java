@@ -3,8 +3,8 @@ package com.highestpeak.gist.concurrent.util;
 /**
  * @author highestpeak <highestpeak@163.com>
  * Created on 2021-08-17
- * todo 按照同一个key的亲和性（先后顺序）来消费
- * see com.github.phantomthief.pool.KeyAffinityExecutor
+ * 按照同一个key的亲和性（先后顺序）来消费
+ * 实现见 {@link KeyAffinityExecutor}，参考 com.github.phantomthief.pool.KeyAffinityExecutor
  */
 public class ExecutorSituationOne {
 }
@@ -3,9 +3,10 @@ package com.highestpeak.gist.concurrent.util;
 /**
  * @author highestpeak <highestpeak@163.com>
  * Created on 2021-08-18
- * todo 每次线程开始执行上报
+ * 每次线程开始执行上报
+ * 实现见 {@link InstrumentedThreadPoolExecutor}，通过 {@link ExecutorsEx#newInstrumentedThreadPool} 创建
  * see ExecutorThreadUsageReporter
- * see ExecutorsEx newRejectingThreadPool
+ * 排队超时提前拒绝见 {@link ExecutorsEx#newRejectingThreadPool}
  */
 public class ExecutorSituationThree {
 }
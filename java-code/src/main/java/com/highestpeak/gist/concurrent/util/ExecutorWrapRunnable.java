@@ -9,6 +9,7 @@ import java.util.concurrent.TimeUnit;
 /**
  * @author highestpeak <highestpeak@163.com>
  * Created on 2021-08-17
+ * 每个任务包两层 Runnable 会多分配两个对象，统计类的需求用 beforeExecute/afterExecute 钩子即可，见 {@link InstrumentedThreadPoolExecutor}
  */
 public class ExecutorWrapRunnable {
 
@@ -55,7 +56,7 @@ public class ExecutorWrapRunnable {
         // maxSize某种意义上对应queueSize
         int maxSize = 100;
         long keepAliveSeconds = 1;
-        // 注意这个queue的大小的设置!
+        // 注意这个queue的大小的设置! 不确定线程数时可以用 ExecutorsEx.newAdaptiveThreadPool 按负载自动调整
         BlockingQueue<Runnable> workQueue = new ArrayBlockingQueue<>(Math.max(coreSize, maxSize));
         ThreadFactory threadFactory = new ThreadFactory() {
             @Override
@@ -0,0 +1,65 @@
+package com.highestpeak.gist.concurrent.util;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * 线程池工厂
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+public final class ExecutorsEx {
+
+    private ExecutorsEx() {
+    }
+
+    /**
+     * 带统计的线程池，队列满且线程数达到 maxSize 后直接拒绝（AbortPolicy）
+     *
+     * @param threadName 线程名，可以包含 %d
+     */
+    public static InstrumentedThreadPoolExecutor newInstrumentedThreadPool(int coreSize, int maxSize, int queueCapacity, String threadName) {
+        return newInstrumentedThreadPool(coreSize, maxSize, queueCapacity, newThreadFactory(threadName));
+    }
+
+    public static InstrumentedThreadPoolExecutor newInstrumentedThreadPool(int coreSize, int maxSize, int queueCapacity,
+            ThreadFactory threadFactory) {
+        Preconditions.checkArgument(coreSize >= 0 && maxSize > 0 && maxSize >= coreSize, "illegal pool size. core: %s, max: %s", coreSize, maxSize);
+        return new InstrumentedThreadPoolExecutor(coreSize, maxSize, 1, TimeUnit.MINUTES, queueCapacity, threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 线程数由 {@link AdaptiveThreadPoolSizer} 按负载在 [minSize, maxSize] 之间自动调整，线程池 shutdown 后停止调整。
+     * 需要自定义冷却时间、排队目标等参数时用 {@link AdaptiveThreadPoolSizer#newBuilder}
+     */
+    public static InstrumentedThreadPoolExecutor newAdaptiveThreadPool(int minSize, int maxSize, int queueCapacity, String threadName) {
+        InstrumentedThreadPoolExecutor executor = newInstrumentedThreadPool(minSize, minSize, queueCapacity, threadName);
+        AdaptiveThreadPoolSizer.newBuilder(executor)
+                .minPoolSize(minSize)
+                .maxPoolSize(maxSize)
+                .start();
+        return executor;
+    }
+
+    /**
+     * 任务排队超过 queueTimeout 时不再执行，预估排队时间超过 queueTimeout 时提交直接拒绝（AbortPolicy），见 {@link RejectingThreadPoolExecutor}
+     */
+    public static RejectingThreadPoolExecutor newRejectingThreadPool(int coreSize, int maxSize, int queueCapacity, Duration queueTimeout,
+            String threadName) {
+        Preconditions.checkArgument(coreSize >= 0 && maxSize > 0 && maxSize >= coreSize, "illegal pool size. core: %s, max: %s", coreSize, maxSize);
+        return new RejectingThreadPoolExecutor(coreSize, maxSize, 1, TimeUnit.MINUTES, queueCapacity, queueTimeout,
+                newThreadFactory(threadName), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    static ThreadFactory newThreadFactory(String threadName) {
+        String nameFormat = threadName.contains("%d") ? threadName : threadName + "-%d";
+        return new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build();
+    }
+}
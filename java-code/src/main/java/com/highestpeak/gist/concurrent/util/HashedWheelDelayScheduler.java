@@ -0,0 +1,274 @@
+package com.highestpeak.gist.concurrent.util;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * 分层哈希时间轮调度后端，插入、提前执行时间、删除都是 O(1)
+ * <p>
+ * 每层 64 个槽位，第 0 层一个槽位代表一个 tick，第 n 层一个槽位代表 64^n 个 tick。
+ * 元素按照距离到期的 tick 数放入对应层，高层槽位在低层转满一圈时降级（cascade）到低层，第 0 层槽位到期后进入 ready 链表等待分发。
+ * 到期精度是 tick，元素不会早于 execTs 被分发，最多晚一个 tick。
+ * <p>
+ * 参考 Linux kernel timer wheel / Kafka TimingWheel
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+class HashedWheelDelayScheduler<KEY, VAL> implements DelayScheduler<KEY, VAL> {
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    /**
+     * 6 层即 64^6 个 tick，1ms 的 tick 也能覆盖两年以上的延迟，更远的元素放在最高层，每转一圈重新放置一次
+     */
+    private static final int LEVELS = 6;
+
+    private final long tickMs;
+    private final Bucket<KEY, VAL>[][] wheels;
+    /**
+     * 已经到期等待分发的元素
+     */
+    private final Bucket<KEY, VAL> ready = new Bucket<>();
+    /**
+     * 小于等于 currentTick 的 tick 都已经处理过
+     */
+    private long currentTick;
+    private int wheelSize;
+    private int readySize;
+
+    @SuppressWarnings("unchecked")
+    HashedWheelDelayScheduler(long tickMs) {
+        Preconditions.checkArgument(tickMs > 0, "tickMs must be positive");
+        this.tickMs = tickMs;
+        this.wheels = new Bucket[LEVELS][WHEEL_SIZE];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                wheels[level][slot] = new Bucket<>();
+            }
+        }
+        this.currentTick = System.currentTimeMillis() / tickMs;
+    }
+
+    @Override
+    public boolean offer(DelayWrapper<KEY, VAL> wrapper) {
+        boolean wasEmpty = size() == 0;
+        int level = place(wrapper);
+        // 第 1 层及以上的元素到期时间一定晚于第 0 层转完一圈，分发线程最晚在那时醒来，不需要唤醒
+        return wasEmpty || level <= 0;
+    }
+
+    @Override
+    public boolean reschedule(DelayWrapper<KEY, VAL> wrapper, long execTs) {
+        remove(wrapper);
+        wrapper.setExecTs(execTs);
+        return offer(wrapper);
+    }
+
+    @Override
+    public void remove(DelayWrapper<KEY, VAL> wrapper) {
+        Bucket<KEY, VAL> bucket = wrapper.bucket;
+        if (bucket == null) {
+            return;
+        }
+        bucket.unlink(wrapper);
+        if (bucket == ready) {
+            readySize--;
+        } else {
+            wheelSize--;
+        }
+    }
+
+    @Override
+    public DelayWrapper<KEY, VAL> pollDue(long now) {
+        advance(now / tickMs);
+        DelayWrapper<KEY, VAL> wrapper = ready.pollFirst();
+        if (wrapper != null) {
+            readySize--;
+        }
+        return wrapper;
+    }
+
+    /**
+     * 近似的最早元素：同一层的槽位按到期顺序排列，但低层第一个非空槽位中的元素可能晚于还没有降级的高层元素
+     */
+    @Override
+    public DelayWrapper<KEY, VAL> pollFirst() {
+        DelayWrapper<KEY, VAL> wrapper = ready.pollFirst();
+        if (wrapper != null) {
+            readySize--;
+            return wrapper;
+        }
+        if (wheelSize == 0) {
+            return null;
+        }
+        // 从低层到高层、按到期顺序找到第一个非空槽位，槽位内取执行时间最早的元素
+        for (int level = 0; level < LEVELS; level++) {
+            long levelTick = currentTick >>> (WHEEL_BITS * level);
+            for (int i = 1; i <= WHEEL_SIZE; i++) {
+                Bucket<KEY, VAL> bucket = wheels[level][(int) ((levelTick + i) & WHEEL_MASK)];
+                if (!bucket.isEmpty()) {
+                    DelayWrapper<KEY, VAL> earliest = bucket.earliest();
+                    bucket.unlink(earliest);
+                    wheelSize--;
+                    return earliest;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public long nextWakeupTs(long now) {
+        if (readySize > 0) {
+            return now;
+        }
+        if (wheelSize == 0) {
+            return Long.MAX_VALUE;
+        }
+        // 找到第 0 层下一个非空槽位；找不到就在第 0 层转完一圈时醒来做 cascade
+        long boundary = (currentTick | WHEEL_MASK) + 1;
+        for (long tick = currentTick + 1; tick < boundary; tick++) {
+            if (!wheels[0][(int) (tick & WHEEL_MASK)].isEmpty()) {
+                return tick * tickMs;
+            }
+        }
+        return boundary * tickMs;
+    }
+
+    @Override
+    public int size() {
+        return wheelSize + readySize;
+    }
+
+    /**
+     * 把元素放入对应的层和槽位
+     *
+     * @return 放入的层，-1 表示已经到期直接进入 ready
+     */
+    private int place(DelayWrapper<KEY, VAL> wrapper) {
+        long expireTick = (wrapper.getExecTs() + tickMs - 1) / tickMs;
+        long delta = expireTick - currentTick;
+        if (delta <= 0) {
+            ready.add(wrapper);
+            readySize++;
+            return -1;
+        }
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (WHEEL_BITS * (level + 1)))) {
+            level++;
+        }
+        int slot = (int) ((expireTick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+        wheels[level][slot].add(wrapper);
+        wheelSize++;
+        return level;
+    }
+
+    private void advance(long targetTick) {
+        if (wheelSize == 0) {
+            // 时间轮为空时直接跳到目标 tick，避免空转
+            currentTick = Math.max(currentTick, targetTick);
+            return;
+        }
+        while (currentTick < targetTick) {
+            if (wheelSize == 0) {
+                currentTick = targetTick;
+                return;
+            }
+            currentTick++;
+            // 低层转满一圈时，把高层对应槽位的元素降级
+            for (int level = 1; level < LEVELS; level++) {
+                if ((currentTick & ((1L << (WHEEL_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                cascade(wheels[level][(int) ((currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK)]);
+            }
+            Bucket<KEY, VAL> expired = wheels[0][(int) (currentTick & WHEEL_MASK)];
+            DelayWrapper<KEY, VAL> wrapper;
+            while ((wrapper = expired.pollFirst()) != null) {
+                wheelSize--;
+                ready.add(wrapper);
+                readySize++;
+            }
+        }
+    }
+
+    private void cascade(Bucket<KEY, VAL> bucket) {
+        // 先整体摘下再逐个放置，超出最高层范围的元素可能被放回同一个槽位
+        DelayWrapper<KEY, VAL> wrapper = bucket.detachAll();
+        while (wrapper != null) {
+            DelayWrapper<KEY, VAL> next = wrapper.next;
+            wrapper.prev = null;
+            wrapper.next = null;
+            wrapper.bucket = null;
+            wheelSize--;
+            place(wrapper);
+            wrapper = next;
+        }
+    }
+
+    /**
+     * 侵入式双向链表，节点就是 {@link DelayWrapper} 本身，不需要额外分配
+     */
+    static final class Bucket<KEY, VAL> {
+        private DelayWrapper<KEY, VAL> head;
+        private DelayWrapper<KEY, VAL> tail;
+
+        private boolean isEmpty() {
+            return head == null;
+        }
+
+        private void add(DelayWrapper<KEY, VAL> wrapper) {
+            wrapper.bucket = this;
+            wrapper.prev = tail;
+            wrapper.next = null;
+            if (tail == null) {
+                head = wrapper;
+            } else {
+                tail.next = wrapper;
+            }
+            tail = wrapper;
+        }
+
+        private void unlink(DelayWrapper<KEY, VAL> wrapper) {
+            if (wrapper.prev == null) {
+                head = wrapper.next;
+            } else {
+                wrapper.prev.next = wrapper.next;
+            }
+            if (wrapper.next == null) {
+                tail = wrapper.prev;
+            } else {
+                wrapper.next.prev = wrapper.prev;
+            }
+            wrapper.prev = null;
+            wrapper.next = null;
+            wrapper.bucket = null;
+        }
+
+        private DelayWrapper<KEY, VAL> earliest() {
+            DelayWrapper<KEY, VAL> earliest = head;
+            for (DelayWrapper<KEY, VAL> wrapper = head; wrapper != null; wrapper = wrapper.next) {
+                if (wrapper.getExecTs() < earliest.getExecTs()) {
+                    earliest = wrapper;
+                }
+            }
+            return earliest;
+        }
+
+        private DelayWrapper<KEY, VAL> detachAll() {
+            DelayWrapper<KEY, VAL> first = head;
+            head = null;
+            tail = null;
+            return first;
+        }
+
+        private DelayWrapper<KEY, VAL> pollFirst() {
+            DelayWrapper<KEY, VAL> first = head;
+            if (first != null) {
+                unlink(first);
+            }
+            return first;
+        }
+    }
+}
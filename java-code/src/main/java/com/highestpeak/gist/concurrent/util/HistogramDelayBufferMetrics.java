@@ -0,0 +1,143 @@
+package com.highestpeak.gist.concurrent.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import com.highestpeak.gist.concurrent.util.BlockingDelayBufferTrigger.AddStatus;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * 进程内的 {@link DelayBufferMetrics} 实现，计数器 + {@link LongHistogram}，可以定时读取后上报到监控系统
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+@Getter
+public class HistogramDelayBufferMetrics implements DelayBufferMetrics {
+
+    private final LongAdder added = new LongAdder();
+    private final LongAdder merged = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder droppedOldest = new LongAdder();
+    private final LongAdder consumedEarliest = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder rescheduled = new LongAdder();
+    private final LongAdder consumeFailed = new LongAdder();
+
+    private final LongHistogram blockedNanos = new LongHistogram();
+    private final LongHistogram dispatchLagMs = new LongHistogram();
+    private final LongHistogram consumeNanos = new LongHistogram();
+    private final LongHistogram consumeBatchSize = new LongHistogram();
+    /**
+     * 按优先级类别统计的分发延迟
+     */
+    @Getter(AccessLevel.NONE)
+    private final ConcurrentHashMap<String, LongHistogram> laneDispatchLagMs = new ConcurrentHashMap<>();
+
+    @Getter(AccessLevel.NONE)
+    private volatile IntSupplier queueDepthSupplier = () -> 0;
+
+    @Override
+    public void registerQueueDepth(IntSupplier queueDepth) {
+        this.queueDepthSupplier = queueDepth;
+    }
+
+    @Override
+    public void onAdd(AddStatus status) {
+        switch (status) {
+            case ADDED:
+                added.increment();
+                break;
+            case MERGED:
+                merged.increment();
+                break;
+            case REJECTED:
+                rejected.increment();
+                break;
+            case DROPPED_OLDEST:
+                added.increment();
+                droppedOldest.increment();
+                break;
+            case CONSUMED_EARLIEST:
+                added.increment();
+                consumedEarliest.increment();
+                break;
+            case SPILLED:
+                spilled.increment();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void onReschedule() {
+        rescheduled.increment();
+    }
+
+    @Override
+    public void onBlocked(long blockedNanos) {
+        this.blockedNanos.record(blockedNanos);
+    }
+
+    @Override
+    public void onDispatch(String priorityClass, long lagMs) {
+        dispatchLagMs.record(lagMs);
+        LongHistogram laneHistogram = laneDispatchLagMs.get(priorityClass);
+        if (laneHistogram == null) {
+            laneHistogram = laneDispatchLagMs.computeIfAbsent(priorityClass, k -> new LongHistogram());
+        }
+        laneHistogram.record(lagMs);
+    }
+
+    @Override
+    public void onConsume(int size, long costNanos, boolean success) {
+        consumeNanos.record(costNanos);
+        consumeBatchSize.record(size);
+        if (!success) {
+            consumeFailed.increment();
+        }
+    }
+
+    /**
+     * @return 该优先级类别的分发延迟，没有分发过时返回空的直方图
+     */
+    public LongHistogram getDispatchLagMs(String priorityClass) {
+        LongHistogram histogram = laneDispatchLagMs.get(priorityClass);
+        return histogram == null ? new LongHistogram() : histogram;
+    }
+
+    public int getQueueDepth() {
+        return queueDepthSupplier.getAsInt();
+    }
+
+    /**
+     * 被合并掉的请求占所有进入缓冲区请求的比例，越高说明缓冲效果越好
+     */
+    public double getMergeRatio() {
+        long mergedCount = merged.sum();
+        long total = mergedCount + added.sum();
+        return total == 0 ? 0 : (double) mergedCount / total;
+    }
+
+    @Override
+    public String toString() {
+        return "queueDepth=" + getQueueDepth()
+                + ", added=" + added.sum()
+                + ", merged=" + merged.sum()
+                + ", mergeRatio=" + String.format("%.4f", getMergeRatio())
+                + ", rejected=" + rejected.sum()
+                + ", droppedOldest=" + droppedOldest.sum()
+                + ", consumedEarliest=" + consumedEarliest.sum()
+                + ", spilled=" + spilled.sum()
+                + ", rescheduled=" + rescheduled.sum()
+                + ", consumeFailed=" + consumeFailed.sum()
+                + ", blockedNanos=[" + blockedNanos + "]"
+                + ", dispatchLagMs=[" + dispatchLagMs + "]"
+                + ", laneDispatchLagMs=" + laneDispatchLagMs
+                + ", consumeNanos=[" + consumeNanos + "]";
+    }
+}
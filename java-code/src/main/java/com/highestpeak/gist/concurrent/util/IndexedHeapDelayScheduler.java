@@ -0,0 +1,147 @@
+package com.highestpeak.gist.concurrent.util;
+
+import java.util.Arrays;
+
+/**
+ * 基于索引 4 叉堆的调度后端，{@link DelayWrapper} 记录自己在堆中的下标，
+ * 插入、删除、调整执行时间都是 O(log n)，不需要像 {@link java.util.PriorityQueue#remove} 一样线性查找
+ * <p>
+ * 只按 execTs 排序，相同 execTs 的元素之间没有顺序保证
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+class IndexedHeapDelayScheduler<KEY, VAL> implements DelayScheduler<KEY, VAL> {
+
+    private static final int ARITY_BITS = 2;
+    private static final int ARITY = 1 << ARITY_BITS;
+    private static final int INITIAL_CAPACITY = 64;
+
+    @SuppressWarnings("unchecked")
+    private DelayWrapper<KEY, VAL>[] heap = new DelayWrapper[INITIAL_CAPACITY];
+    private int size;
+
+    @Override
+    public boolean offer(DelayWrapper<KEY, VAL> wrapper) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size + (size >> 1));
+        }
+        siftUp(size++, wrapper);
+        // 新增加的元素在堆顶，唤醒分发线程
+        return heap[0] == wrapper;
+    }
+
+    @Override
+    public boolean reschedule(DelayWrapper<KEY, VAL> wrapper, long execTs) {
+        int index = wrapper.heapIndex;
+        if (index < 0) {
+            wrapper.setExecTs(execTs);
+            return offer(wrapper);
+        }
+        long oldExecTs = wrapper.getExecTs();
+        wrapper.setExecTs(execTs);
+        if (execTs < oldExecTs) {
+            siftUp(index, wrapper);
+        } else {
+            siftDown(index, wrapper);
+        }
+        return heap[0] == wrapper;
+    }
+
+    @Override
+    public void remove(DelayWrapper<KEY, VAL> wrapper) {
+        int index = wrapper.heapIndex;
+        if (index < 0) {
+            return;
+        }
+        removeAt(index);
+    }
+
+    @Override
+    public DelayWrapper<KEY, VAL> pollDue(long now) {
+        if (size == 0 || heap[0].getExecTs() > now) {
+            return null;
+        }
+        DelayWrapper<KEY, VAL> head = heap[0];
+        removeAt(0);
+        return head;
+    }
+
+    @Override
+    public DelayWrapper<KEY, VAL> pollFirst() {
+        if (size == 0) {
+            return null;
+        }
+        DelayWrapper<KEY, VAL> head = heap[0];
+        removeAt(0);
+        return head;
+    }
+
+    @Override
+    public long nextWakeupTs(long now) {
+        return size == 0 ? Long.MAX_VALUE : heap[0].getExecTs();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void removeAt(int index) {
+        DelayWrapper<KEY, VAL> removed = heap[index];
+        removed.heapIndex = -1;
+        int last = --size;
+        DelayWrapper<KEY, VAL> moved = heap[last];
+        heap[last] = null;
+        if (index == last) {
+            return;
+        }
+        // 用最后一个元素填补空位，它可能需要上浮也可能需要下沉
+        siftDown(index, moved);
+        if (heap[index] == moved) {
+            siftUp(index, moved);
+        }
+    }
+
+    private void siftUp(int index, DelayWrapper<KEY, VAL> wrapper) {
+        long execTs = wrapper.getExecTs();
+        while (index > 0) {
+            int parent = (index - 1) >>> ARITY_BITS;
+            DelayWrapper<KEY, VAL> parentWrapper = heap[parent];
+            if (execTs >= parentWrapper.getExecTs()) {
+                break;
+            }
+            setAt(index, parentWrapper);
+            index = parent;
+        }
+        setAt(index, wrapper);
+    }
+
+    private void siftDown(int index, DelayWrapper<KEY, VAL> wrapper) {
+        long execTs = wrapper.getExecTs();
+        while (true) {
+            int firstChild = (index << ARITY_BITS) + 1;
+            if (firstChild >= size) {
+                break;
+            }
+            int minChild = firstChild;
+            int lastChild = Math.min(firstChild + ARITY, size);
+            for (int child = firstChild + 1; child < lastChild; child++) {
+                if (heap[child].getExecTs() < heap[minChild].getExecTs()) {
+                    minChild = child;
+                }
+            }
+            if (execTs <= heap[minChild].getExecTs()) {
+                break;
+            }
+            setAt(index, heap[minChild]);
+            index = minChild;
+        }
+        setAt(index, wrapper);
+    }
+
+    private void setAt(int index, DelayWrapper<KEY, VAL> wrapper) {
+        heap[index] = wrapper;
+        wrapper.heapIndex = index;
+    }
+}
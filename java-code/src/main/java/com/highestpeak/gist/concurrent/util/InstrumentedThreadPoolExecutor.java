@@ -0,0 +1,523 @@
+package com.highestpeak.gist.concurrent.util;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import com.google.common.base.Preconditions;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * 带统计的线程池：记录每个任务的排队等待时间、执行时间、拒绝次数，以及任务开始时的活跃线程数和队列深度
+ * <p>
+ * 和 {@link ExecutorWrapRunnable} 里每个任务包两层 Runnable 不同，这里用 {@link #beforeExecute}/{@link #afterExecute} 钩子统计，
+ * 入队时间记录在队列自带的 long 数组里，不为每个任务分配额外对象。统计都是 {@link LongHistogram} 和 {@link LongAdder}，
+ * 可以定时读取后上报到监控系统。
+ * <p>
+ * 工作队列固定为内部的有界数组队列，通过 queueCapacity 指定大小。任务可以带排队超时（见 {@link #executeWithQueueTimeout}），
+ * 排队超过超时时间的任务在出队时直接丢弃，不再执行。
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+@Getter
+public class InstrumentedThreadPoolExecutor extends ThreadPoolExecutor {
+
+    private static final double EWMA_ALPHA = 0.1;
+
+    /**
+     * 入队到开始执行的等待时间，直接交给新建线程执行的任务记为 0
+     */
+    private final LongHistogram queueWaitNanos = new LongHistogram();
+    private final LongHistogram runNanos = new LongHistogram();
+    /**
+     * 每个任务开始执行时的活跃线程数（包括它自己）
+     */
+    private final LongHistogram activeThreads = new LongHistogram();
+    /**
+     * 每个任务开始执行时队列中还在排队的任务数
+     */
+    private final LongHistogram queueDepth = new LongHistogram();
+    private final LongAdder rejected = new LongAdder();
+    /**
+     * 执行时抛出异常的任务数，submit 提交的任务异常被 Future 吞掉，不计入
+     */
+    private final LongAdder failed = new LongAdder();
+    /**
+     * 排队超时在出队时被丢弃的任务数
+     */
+    private final LongAdder expired = new LongAdder();
+    /**
+     * 执行时间的指数移动平均，用于估计排队时间
+     */
+    private volatile double runNanosEwma;
+
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger active = new AtomicInteger();
+    @Getter(AccessLevel.NONE)
+    private final ThreadLocal<TaskTiming> timings;
+    @Getter(AccessLevel.NONE)
+    private final TimestampedQueue workQueue;
+
+    public InstrumentedThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, int queueCapacity,
+            ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+        this(corePoolSize, maximumPoolSize, keepAliveTime, unit, new TimestampedQueue(queueCapacity, ThreadLocal.withInitial(TaskTiming::new)),
+                threadFactory, handler);
+    }
+
+    private InstrumentedThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, TimestampedQueue workQueue,
+            ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
+        this.workQueue = workQueue;
+        this.timings = workQueue.timings;
+        workQueue.expiredHandler = this::onExpired;
+        super.setRejectedExecutionHandler(new CountingRejectedHandler(rejected, handler));
+    }
+
+    @Override
+    public void setRejectedExecutionHandler(RejectedExecutionHandler handler) {
+        super.setRejectedExecutionHandler(new CountingRejectedHandler(rejected, handler));
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        TaskTiming timing = timings.get();
+        long now = System.nanoTime();
+        // 从队列中取出的任务才有入队时间，addWorker 时直接带上的第一个任务没有排队
+        queueWaitNanos.record(timing.task == r ? now - timing.enqueueNanos : 0);
+        timing.task = null;
+        timing.startNanos = now;
+        activeThreads.record(active.incrementAndGet());
+        queueDepth.record(workQueue.size());
+        super.beforeExecute(t, r);
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        try {
+            super.afterExecute(r, t);
+        } finally {
+            long elapsedNanos = System.nanoTime() - timings.get().startNanos;
+            runNanos.record(elapsedNanos);
+            // 并发更新时偶尔丢失一次采样，不影响估计
+            double ewma = runNanosEwma;
+            runNanosEwma = ewma == 0 ? elapsedNanos : ewma + EWMA_ALPHA * (elapsedNanos - ewma);
+            active.decrementAndGet();
+            if (t != null) {
+                failed.increment();
+            }
+        }
+    }
+
+    /**
+     * 提交一个带排队超时的任务，超时后任务在出队时被丢弃并交给 {@link #onExpired}
+     *
+     * @param queueTimeoutNanos 小于等于 0 表示不超时
+     */
+    protected void executeWithQueueTimeout(Runnable command, long queueTimeoutNanos) {
+        // 入队在当前线程上进行，通过线程上复用的 TaskTiming 把超时传给队列，不需要包装任务
+        TaskTiming timing = timings.get();
+        timing.submitQueueTimeoutNanos = Math.max(queueTimeoutNanos, 0);
+        try {
+            super.execute(command);
+        } finally {
+            timing.submitQueueTimeoutNanos = 0;
+        }
+    }
+
+    /**
+     * 排队超时的任务在工作线程出队时回调，默认取消 Future 让等待方尽快得到结果
+     */
+    protected void onExpired(Runnable task) {
+        expired.increment();
+        if (task instanceof Future) {
+            ((Future<?>) task).cancel(false);
+        }
+    }
+
+    /**
+     * 按队列长度、线程数和最近的执行时间估计新任务的排队时间
+     */
+    public long predictQueueWaitNanos() {
+        return (long) (workQueue.size() * runNanosEwma / Math.max(getMaximumPoolSize(), 1));
+    }
+
+    /**
+     * @return 当前正在执行任务的线程数，不需要像 {@link #getActiveCount()} 一样获取线程池的锁
+     */
+    public int getRunningCount() {
+        return active.get();
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + "[queueWaitNanos: " + queueWaitNanos + "; runNanos: " + runNanos + "; rejected: " + rejected.sum() + "]";
+    }
+
+    /**
+     * 工作线程上最近一次从队列取出的任务及其时间，每个线程一个，复用
+     */
+    private static final class TaskTiming {
+        private Runnable task;
+        private long enqueueNanos;
+        private long startNanos;
+        /**
+         * 当前线程正在提交的任务的排队超时
+         */
+        private long submitQueueTimeoutNanos;
+    }
+
+    private static final class CountingRejectedHandler implements RejectedExecutionHandler {
+        private final LongAdder rejected;
+        private final RejectedExecutionHandler delegate;
+
+        private CountingRejectedHandler(LongAdder rejected, RejectedExecutionHandler delegate) {
+            this.rejected = rejected;
+            this.delegate = Preconditions.checkNotNull(delegate, "handler is required");
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            rejected.increment();
+            delegate.rejectedExecution(r, executor);
+        }
+    }
+
+    /**
+     * 有界环形数组队列，和 ArrayBlockingQueue 一样一把锁两个条件，额外用 long 数组记录每个元素的入队时间和排队超时。
+     * 元素出队时把入队时间写到出队线程的 {@link TaskTiming} 上，供 beforeExecute 计算等待时间；已经超时的元素交给 expiredHandler，继续取下一个
+     */
+    private static final class TimestampedQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+        private final Runnable[] items;
+        private final long[] enqueueNanos;
+        private final long[] queueTimeoutNanos;
+        private final ThreadLocal<TaskTiming> timings;
+        private Consumer<Runnable> expiredHandler;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final Condition notFull = lock.newCondition();
+        private int takeIndex;
+        private int putIndex;
+        /**
+         * 只在持有锁时修改，volatile 让 size() 不需要加锁
+         */
+        private volatile int count;
+
+        private TimestampedQueue(int capacity, ThreadLocal<TaskTiming> timings) {
+            Preconditions.checkArgument(capacity > 0, "queueCapacity must be positive");
+            this.items = new Runnable[capacity];
+            this.enqueueNanos = new long[capacity];
+            this.queueTimeoutNanos = new long[capacity];
+            this.timings = timings;
+        }
+
+        @Override
+        public boolean offer(Runnable e) {
+            Preconditions.checkNotNull(e);
+            lock.lock();
+            try {
+                if (count == items.length) {
+                    return false;
+                }
+                enqueue(e);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean offer(Runnable e, long timeout, TimeUnit unit) throws InterruptedException {
+            Preconditions.checkNotNull(e);
+            long nanos = unit.toNanos(timeout);
+            lock.lockInterruptibly();
+            try {
+                while (count == items.length) {
+                    if (nanos <= 0) {
+                        return false;
+                    }
+                    nanos = notFull.awaitNanos(nanos);
+                }
+                enqueue(e);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void put(Runnable e) throws InterruptedException {
+            Preconditions.checkNotNull(e);
+            lock.lockInterruptibly();
+            try {
+                while (count == items.length) {
+                    notFull.await();
+                }
+                enqueue(e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public Runnable take() throws InterruptedException {
+            while (true) {
+                Runnable x;
+                long ts;
+                long timeout;
+                lock.lockInterruptibly();
+                try {
+                    while (count == 0) {
+                        notEmpty.await();
+                    }
+                    ts = enqueueNanos[takeIndex];
+                    timeout = queueTimeoutNanos[takeIndex];
+                    x = dequeue();
+                } finally {
+                    lock.unlock();
+                }
+                if (!expired(x, ts, timeout)) {
+                    return taken(x, ts);
+                }
+            }
+        }
+
+        @Override
+        public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+            while (true) {
+                Runnable x;
+                long ts;
+                long queueTimeout;
+                lock.lockInterruptibly();
+                try {
+                    long nanos = deadlineNanos - System.nanoTime();
+                    while (count == 0) {
+                        if (nanos <= 0) {
+                            return null;
+                        }
+                        nanos = notEmpty.awaitNanos(nanos);
+                    }
+                    ts = enqueueNanos[takeIndex];
+                    queueTimeout = queueTimeoutNanos[takeIndex];
+                    x = dequeue();
+                } finally {
+                    lock.unlock();
+                }
+                if (!expired(x, ts, queueTimeout)) {
+                    return taken(x, ts);
+                }
+            }
+        }
+
+        @Override
+        public Runnable poll() {
+            while (true) {
+                Runnable x;
+                long ts;
+                long queueTimeout;
+                lock.lock();
+                try {
+                    if (count == 0) {
+                        return null;
+                    }
+                    ts = enqueueNanos[takeIndex];
+                    queueTimeout = queueTimeoutNanos[takeIndex];
+                    x = dequeue();
+                } finally {
+                    lock.unlock();
+                }
+                if (!expired(x, ts, queueTimeout)) {
+                    return taken(x, ts);
+                }
+            }
+        }
+
+        @Override
+        public Runnable peek() {
+            lock.lock();
+            try {
+                return items[takeIndex];
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public int remainingCapacity() {
+            return items.length - count;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (o == null) {
+                return false;
+            }
+            lock.lock();
+            try {
+                for (int i = takeIndex, n = 0; n < count; i = inc(i), n++) {
+                    if (o.equals(items[i])) {
+                        removeAt(i);
+                        return true;
+                    }
+                }
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int drainTo(Collection<? super Runnable> c) {
+            return drainTo(c, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public int drainTo(Collection<? super Runnable> c, int maxElements) {
+            Preconditions.checkArgument(c != this);
+            lock.lock();
+            try {
+                int n = Math.min(maxElements, count);
+                for (int i = 0; i < n; i++) {
+                    c.add(dequeue());
+                }
+                return n;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 返回快照上的迭代器，只在 shutdownNow、purge 等低频路径上用到
+         */
+        @Override
+        public Iterator<Runnable> iterator() {
+            List<Runnable> snapshot;
+            lock.lock();
+            try {
+                snapshot = new ArrayList<>(count);
+                for (int i = takeIndex, n = 0; n < count; i = inc(i), n++) {
+                    snapshot.add(items[i]);
+                }
+            } finally {
+                lock.unlock();
+            }
+            Iterator<Runnable> it = snapshot.iterator();
+            return new Iterator<Runnable>() {
+                private Runnable lastReturned;
+
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public Runnable next() {
+                    lastReturned = it.next();
+                    return lastReturned;
+                }
+
+                @Override
+                public void remove() {
+                    if (lastReturned == null) {
+                        throw new IllegalStateException();
+                    }
+                    TimestampedQueue.this.remove(lastReturned);
+                    lastReturned = null;
+                }
+            };
+        }
+
+        private void enqueue(Runnable e) {
+            items[putIndex] = e;
+            enqueueNanos[putIndex] = System.nanoTime();
+            queueTimeoutNanos[putIndex] = timings.get().submitQueueTimeoutNanos;
+            putIndex = inc(putIndex);
+            count++;
+            notEmpty.signal();
+        }
+
+        private Runnable dequeue() {
+            Runnable x = items[takeIndex];
+            if (x == null) {
+                throw new NoSuchElementException();
+            }
+            items[takeIndex] = null;
+            takeIndex = inc(takeIndex);
+            count--;
+            notFull.signal();
+            return x;
+        }
+
+        private void removeAt(int removeIndex) {
+            if (removeIndex == takeIndex) {
+                dequeue();
+                return;
+            }
+            // 后面的元素整体前移一位
+            int i = removeIndex;
+            while (true) {
+                int next = inc(i);
+                if (next == putIndex) {
+                    items[i] = null;
+                    putIndex = i;
+                    break;
+                }
+                items[i] = items[next];
+                enqueueNanos[i] = enqueueNanos[next];
+                queueTimeoutNanos[i] = queueTimeoutNanos[next];
+                i = next;
+            }
+            count--;
+            notFull.signal();
+        }
+
+        /**
+         * 在锁外调用，超时的任务交给 expiredHandler
+         */
+        private boolean expired(Runnable x, long ts, long queueTimeout) {
+            if (queueTimeout <= 0 || System.nanoTime() - ts <= queueTimeout) {
+                return false;
+            }
+            try {
+                expiredHandler.accept(x);
+            } catch (Throwable t) {
+                // 不能让回调的异常打断工作线程取任务
+                Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), t);
+            }
+            return true;
+        }
+
+        private Runnable taken(Runnable x, long ts) {
+            TaskTiming timing = timings.get();
+            timing.task = x;
+            timing.enqueueNanos = ts;
+            return x;
+        }
+
+        private int inc(int i) {
+            return ++i == items.length ? 0 : i;
+        }
+    }
+}
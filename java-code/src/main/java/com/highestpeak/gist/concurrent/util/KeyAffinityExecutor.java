@@ -0,0 +1,331 @@
+package com.highestpeak.gist.concurrent.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import com.github.phantomthief.util.ThrowableRunnable;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 按 key 亲和执行的线程池：同一个 key 的任务按提交顺序串行执行，不同 key 之间并行
+ * <p>
+ * 和 more-lambdas 的 KeyAffinityExecutor 把 key 固定哈希到某个线程不同，这里每个 key 对应一个无锁的 MPSC 信箱（mailbox），
+ * 调度的单位是整个信箱而不是线程：信箱有任务时被放入它所属 worker 的本地队列，空闲的 worker 会从其他 worker 的队列尾部偷走整个信箱执行。
+ * 同一个信箱同一时刻只会被一个 worker 持有，所以同一个 key 仍然是 FIFO 的；热点 key 只会占住一个线程，
+ * 和它哈希到同一个 worker 的其他 key 会被空闲线程偷走，不会出现一个线程排满、其他线程空闲的情况。
+ * <p>
+ * 信箱在任务执行完后从 map 中移除，不会随 key 的数量无限增长。
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+@Slf4j
+public class KeyAffinityExecutor<K> implements AutoCloseable {
+
+    /**
+     * worker 每次持有一个信箱最多连续执行的任务数，用完后把信箱放回队列尾部，避免热点 key 饿死同一个 worker 上的其他 key
+     */
+    private static final int MAILBOX_BATCH = 32;
+
+    private final ConcurrentHashMap<K, Mailbox<K>> mailboxes = new ConcurrentHashMap<>();
+    private final List<Worker> workers;
+    /**
+     * 排队中的任务数上限，为 null 时不限制；满了之后 execute 阻塞等待
+     */
+    private final Semaphore queuePermits;
+
+    private volatile boolean shutdown;
+
+    /**
+     * @param parallelism     worker 线程数
+     * @param queueBufferSize 平均每个线程最多排队的任务数，总共 parallelism * queueBufferSize，小于等于 0 表示不限制
+     * @param threadName      线程名，可以包含 %d
+     */
+    public static <K> KeyAffinityExecutor<K> newSerializingExecutor(int parallelism, int queueBufferSize, String threadName) {
+        return new KeyAffinityExecutor<>(parallelism, queueBufferSize, threadName);
+    }
+
+    protected KeyAffinityExecutor(int parallelism, int queueBufferSize, String threadName) {
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+        this.queuePermits = queueBufferSize > 0 ? new Semaphore(parallelism * queueBufferSize) : null;
+        String nameFormat = threadName.contains("%d") ? threadName : threadName + "-%d";
+        List<Worker> workerList = new ArrayList<>(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            workerList.add(new Worker(String.format(nameFormat, i)));
+        }
+        this.workers = Collections.unmodifiableList(workerList);
+        for (Worker worker : workers) {
+            worker.thread.start();
+        }
+    }
+
+    public void execute(K key, Runnable task) {
+        Preconditions.checkNotNull(task, "task is required");
+        submit(key, task);
+    }
+
+    /**
+     * 任务在 worker 线程上异步执行，抛出的异常只会被记录日志，不会抛给调用方
+     */
+    public <X extends Throwable> void executeEx(K key, ThrowableRunnable<X> task) throws X {
+        Preconditions.checkNotNull(task, "task is required");
+        submit(key, () -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                log.warn("key affinity task exception. key: {}", key, t);
+            }
+        });
+    }
+
+    /**
+     * 不再接收新任务，已经提交的任务会继续执行完，worker 线程随后退出
+     */
+    @Override
+    public void close() {
+        shutdown = true;
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker.thread);
+        }
+    }
+
+    /**
+     * @return false 表示超时时 worker 线程还没有全部退出
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        for (Worker worker : workers) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+            if (remainingMillis <= 0) {
+                return !worker.thread.isAlive();
+            }
+            worker.thread.join(remainingMillis);
+        }
+        for (Worker worker : workers) {
+            if (worker.thread.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 当前存在的信箱数，即有任务排队或者正在执行的 key 数
+     */
+    @VisibleForTesting
+    public int mailboxCount() {
+        return mailboxes.size();
+    }
+
+    private void submit(K key, Runnable task) {
+        Preconditions.checkNotNull(key, "key is required");
+        if (shutdown) {
+            throw new RejectedExecutionException("executor is closed. key: " + key);
+        }
+        if (queuePermits != null) {
+            try {
+                queuePermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("interrupted while waiting for queue space. key: " + key, e);
+            }
+        }
+        Mailbox<K> mailbox = mailboxes.computeIfAbsent(key, this::newMailbox);
+        while (true) {
+            int pending = mailbox.pending.get();
+            if (pending < 0) {
+                // 信箱刚刚执行完并且已经失效，帮忙从 map 中移除后换一个新的
+                mailboxes.remove(key, mailbox);
+                mailbox = mailboxes.computeIfAbsent(key, this::newMailbox);
+                continue;
+            }
+            if (mailbox.pending.compareAndSet(pending, pending + 1)) {
+                mailbox.enqueue(task);
+                if (pending == 0) {
+                    // 0 -> 1 的提交者负责调度信箱，其他时候信箱已经在某个队列中或者正在被执行
+                    schedule(mailbox);
+                }
+                return;
+            }
+        }
+    }
+
+    private Mailbox<K> newMailbox(K key) {
+        return new Mailbox<>(key, spread(key) % workers.size());
+    }
+
+    private static int spread(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return h & Integer.MAX_VALUE;
+    }
+
+    private void schedule(Mailbox<K> mailbox) {
+        Worker home = workers.get(mailbox.home);
+        home.localQueue.offerLast(mailbox);
+        if (home.parked) {
+            LockSupport.unpark(home.thread);
+            return;
+        }
+        // 所属 worker 正忙，叫醒一个空闲的 worker 来偷
+        for (Worker worker : workers) {
+            if (worker.parked) {
+                LockSupport.unpark(worker.thread);
+                return;
+            }
+        }
+    }
+
+    private Mailbox<K> steal(Worker thief) {
+        int start = ThreadLocalRandom.current().nextInt(workers.size());
+        for (int i = 0; i < workers.size(); i++) {
+            Worker victim = workers.get((start + i) % workers.size());
+            if (victim == thief) {
+                continue;
+            }
+            // 从尾部偷，和 victim 从头部取的操作错开
+            Mailbox<K> mailbox = victim.localQueue.pollLast();
+            if (mailbox != null) {
+                return mailbox;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasQueuedMailbox() {
+        for (Worker worker : workers) {
+            if (!worker.localQueue.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 执行信箱中的任务，调用时当前 worker 独占该信箱
+     *
+     * @return true 表示信箱中还有任务，需要重新放回队列
+     */
+    private boolean runMailbox(Mailbox<K> mailbox) {
+        for (int i = 0; i < MAILBOX_BATCH; i++) {
+            Runnable task = mailbox.poll();
+            try {
+                task.run();
+            } catch (Throwable t) {
+                log.warn("key affinity task exception. key: {}", mailbox.key, t);
+            } finally {
+                if (queuePermits != null) {
+                    queuePermits.release();
+                }
+            }
+            if (mailbox.pending.decrementAndGet() == 0) {
+                // 执行完了。CAS 失败说明有新任务在 0 -> 1，由那个提交者重新调度
+                if (mailbox.pending.compareAndSet(0, -1)) {
+                    mailboxes.remove(mailbox.key, mailbox);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final class Worker implements Runnable {
+        private final Thread thread;
+        private final ConcurrentLinkedDeque<Mailbox<K>> localQueue = new ConcurrentLinkedDeque<>();
+        private volatile boolean parked;
+
+        private Worker(String name) {
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Mailbox<K> mailbox = localQueue.pollFirst();
+                if (mailbox == null) {
+                    mailbox = steal(this);
+                }
+                if (mailbox != null) {
+                    if (runMailbox(mailbox)) {
+                        localQueue.offerLast(mailbox);
+                    }
+                    continue;
+                }
+                if (shutdown && !hasQueuedMailbox()) {
+                    return;
+                }
+                // 先标记 parked 再检查一次队列，和 schedule 中先入队再检查 parked 配合，不会丢失唤醒
+                parked = true;
+                if (!hasQueuedMailbox() && !shutdown) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+            }
+        }
+    }
+
+    /**
+     * 一个 key 的任务信箱。pending 为已提交未执行完的任务数，-1 表示信箱已经失效，不能再提交
+     */
+    private static final class Mailbox<K> {
+        private final K key;
+        private final int home;
+        private final AtomicInteger pending = new AtomicInteger();
+        /**
+         * Vyukov 无锁 MPSC 队列：生产者 getAndSet tail 后再链接 next，消费者只由持有信箱的 worker 访问
+         */
+        private final AtomicReference<Node> tail;
+        private Node head;
+
+        private Mailbox(K key, int home) {
+            this.key = key;
+            this.home = home;
+            Node stub = new Node(null);
+            this.head = stub;
+            this.tail = new AtomicReference<>(stub);
+        }
+
+        private void enqueue(Runnable task) {
+            Node node = new Node(task);
+            Node prev = tail.getAndSet(node);
+            prev.next = node;
+        }
+
+        /**
+         * 调用前 pending > 0，任务一定已经或者马上会被链接上，短暂自旋等待生产者完成链接
+         */
+        private Runnable poll() {
+            Node next;
+            while ((next = head.next) == null) {
+                Thread.yield();
+            }
+            head = next;
+            Runnable task = next.task;
+            next.task = null;
+            return task;
+        }
+    }
+
+    private static final class Node {
+        private Runnable task;
+        private volatile Node next;
+
+        private Node(Runnable task) {
+            this.task = task;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.highestpeak.gist.concurrent.util;
+
+import java.util.Map;
+
+import org.slf4j.MDC;
+
+/**
+ * 传递 slf4j MDC 的 {@link ContextPropagator}
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+public class MdcContextPropagator implements ContextPropagator {
+
+    @Override
+    public Object capture() {
+        Map<String, String> contextMap = MDC.getCopyOfContextMap();
+        return contextMap == null || contextMap.isEmpty() ? null : contextMap;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object attach(Object context) {
+        Map<String, String> previous = MDC.getCopyOfContextMap();
+        MDC.setContextMap((Map<String, String>) context);
+        return previous;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void detach(Object previous) {
+        if (previous == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap((Map<String, String>) previous);
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.highestpeak.gist.concurrent.util;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.highestpeak.gist.concurrent.util.BlockingDelayBufferTrigger.AddStatus;
+import com.highestpeak.gist.facade.api.RedisCommands;
+
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 集群范围的延迟合并触发器，多个实例对同一个 key 的写入在 redis 中合并，每个 key 每个窗口只分发一次
+ * <p>
+ * redis 中的数据：
+ * <ul>
+ *     <li>{name}:queue 共享的延迟队列，zset，member 为编码后的 key，score 为执行时间</li>
+ *     <li>{name}:val:{key} 待合并的值，hash，每次写入使用独立的 field：{全局序号}:{实例 id}:{执行时间}，写入之间不会互相覆盖，
+ *     分发时按序号用 dupValFunc 合并</li>
+ *     <li>{name}:lease:{key} 分发租约，SET NX PX 抢占，持有租约的实例才能分发这个 key</li>
+ *     <li>{name}:seq 全局序号，每次批量写入 INCR 一次</li>
+ * </ul>
+ * 写入先进入本地的 {@link BlockingDelayBufferTrigger} 合并 localFlushMs，再批量写入 redis，降低 redis 命令数。
+ * <p>
+ * 整个流程只依赖单个命令的原子性，不需要 lua 脚本：
+ * <ul>
+ *     <li>写入：INCR 序号 → 一个管道内 HSET 每个 key 的 field，最后一条 ZADD LT 批量入队（只会把执行时间提前，需要 redis 6.2+）。
+ *     写入失败时整批放回本地缓冲区 flushRetryMs 后重试，重试沿用上次的 field 名覆盖上次可能已经写入的部分；
+ *     如果重试前这个 key 已经被分发，上次写入的部分会被多消费一次，和下面的至少一次语义一致</li>
+ *     <li>分发：抢到租约 → 把队列中的 score 推迟 leaseMs（实例崩溃后租约过期自然重新到期）→ HGETALL → 合并后消费 →
+ *     HDEL 读到的 field → ZREM → HKEYS，还有剩余 field（分发期间的新写入）时按其中最早的执行时间重新 ZADD → 释放租约</li>
+ * </ul>
+ * 分发期间的写入要么在 HKEYS 中被看到而重新入队，要么它的 ZADD 发生在 ZREM 之后而自己入队，不会丢失。
+ * 语义是至少一次：消费时间超过 leaseMs 或者消费后实例崩溃，同一批值可能被再次分发。
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+@Slf4j
+public final class RedisDelayBufferTrigger<KEY, VAL> {
+
+    private static final String LEASE_OK = "OK";
+
+    private final RedisCommands redis;
+    private final String queueKey;
+    private final String seqKey;
+    private final String keyPrefix;
+    private final String instanceId;
+
+    private final DelayBufferCodec<KEY> keyCodec;
+    private final DelayBufferCodec<VAL> valCodec;
+    private final BiFunction<VAL, VAL, VAL> dupValFunc;
+    private final BiConsumer<KEY, VAL> upToTimeConsumer;
+
+    private final long localFlushMs;
+    private final long flushRetryMs;
+    private final long leaseMs;
+    private final int pollBatchSize;
+
+    /**
+     * 写入 redis 前的本地合并
+     */
+    private final BlockingDelayBufferTrigger<KEY, Pending<VAL>> localTrigger;
+    private final ScheduledExecutorService poller;
+    private final ExecutorService consumerExecutor;
+
+    private RedisDelayBufferTrigger(Builder<KEY, VAL> builder) {
+        this.redis = builder.redis;
+        this.keyPrefix = builder.name + ":";
+        this.queueKey = keyPrefix + "queue";
+        this.seqKey = keyPrefix + "seq";
+        this.instanceId = StringUtils.defaultIfBlank(builder.instanceId, UUID.randomUUID().toString());
+        this.keyCodec = builder.keyCodec;
+        this.valCodec = builder.valCodec;
+        this.dupValFunc = builder.dupValConsumer;
+        this.upToTimeConsumer = builder.upToTimeConsumer;
+        this.localFlushMs = builder.localFlushMs;
+        this.flushRetryMs = builder.flushRetryMs;
+        this.leaseMs = builder.leaseMs;
+        this.pollBatchSize = builder.pollBatchSize;
+
+        String threadName = "redis-delay-buffer-trigger-" + builder.name;
+        this.localTrigger = BlockingDelayBufferTrigger.<KEY, Pending<VAL>> newBuilder()
+                .threadName(threadName + "-flush")
+                .capacity(builder.localCapacity)
+                .dupValConsumer(this::mergePending)
+                .batchConsumer(this::flush)
+                .executorCount(1)
+                .build();
+        this.consumerExecutor = new ThreadPoolExecutor(builder.executorCount, builder.executorCount, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(builder.pollBatchSize * 2),
+                new ThreadFactoryBuilder().setNameFormat(threadName + "-%d").setDaemon(true).build());
+        this.poller = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("poller-" + threadName).setDaemon(true).build());
+        poller.scheduleWithFixedDelay(this::poll, builder.pollIntervalMs, builder.pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 写入本地缓冲区，最多 localFlushMs 后批量写入 redis；同一个 key 在集群内合并后在 execTs 到期时由一个实例分发
+     */
+    public AddStatus add(KEY key, VAL param, long delay, TimeUnit unit) {
+        long delayMs = Math.max(unit.toMillis(delay), 0);
+        long execTs = System.currentTimeMillis() + delayMs;
+        return localTrigger.add(key, new Pending<>(param, execTs, Collections.emptyList()), Math.min(delayMs, localFlushMs), TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        // 先把本地缓冲的数据写入 redis，已经写入 redis 的数据由其他实例继续分发
+        localTrigger.shutdownGracefully(Duration.ofMillis(leaseMs));
+        poller.shutdown();
+        consumerExecutor.shutdown();
+    }
+
+    /**
+     * 本地合并后的一批数据写入 redis，整批共用一个全局序号，HSET 和 ZADD 在一个管道中发送
+     */
+    private void flush(List<KEY> keys, List<Pending<VAL>> pendings) {
+        List<Pending<VAL>> written = new ArrayList<>(pendings.size());
+        try {
+            long seq = redis.incr(seqKey);
+            for (Pending<VAL> pending : pendings) {
+                // 重试的数据沿用上次的 field，上次已经写入的部分被覆盖而不是再写一份
+                List<String> fields = !pending.fields.isEmpty() ? pending.fields
+                        : Collections.singletonList(seq + ":" + instanceId + ":" + pending.execTs);
+                written.add(new Pending<>(pending.val, pending.execTs, fields));
+            }
+            redis.pipelined(pipeline -> {
+                Map<String, Double> queueUpdates = new HashMap<>();
+                for (int i = 0; i < keys.size(); i++) {
+                    String member = keyCodec.encode(keys.get(i));
+                    Pending<VAL> pending = written.get(i);
+                    String valueKey = valueKey(member);
+                    if (pending.fields.size() > 1) {
+                        // 多次写入失败的数据在本地合并过，值都写到第一个 field，其余的删掉
+                        List<String> staleFields = pending.fields.subList(1, pending.fields.size());
+                        pipeline.hdel(valueKey, staleFields.toArray(new String[0]));
+                    }
+                    pipeline.hset(valueKey, pending.fields.get(0), valCodec.encode(pending.val));
+                    queueUpdates.put(member, (double) pending.execTs);
+                }
+                // 只把执行时间提前，不会把其他实例写入的更早的执行时间推迟
+                pipeline.zadd(queueKey, queueUpdates, "LT");
+            });
+        } catch (Throwable t) {
+            log.warn("flush to redis exception, retry after {}ms. queue: {}, size: {}", flushRetryMs, queueKey, keys.size(), t);
+            requeueLocal(keys, written.size() == pendings.size() ? written : pendings);
+        }
+    }
+
+    /**
+     * 写入失败的数据放回本地缓冲区，不能阻塞 flush 线程，放不回去的数据记录错误日志
+     */
+    private void requeueLocal(List<KEY> keys, List<Pending<VAL>> pendings) {
+        List<KEY> lost = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (localTrigger.tryAdd(keys.get(i), pendings.get(i), flushRetryMs, TimeUnit.MILLISECONDS) == AddStatus.REJECTED) {
+                lost.add(keys.get(i));
+            }
+        }
+        if (!lost.isEmpty()) {
+            log.error("requeue failed batch rejected, local buffer full or shutdown. queue: {}, lost keys: {}", queueKey, lost);
+        }
+    }
+
+    /**
+     * 本地合并：带 field 的一方是写入失败放回来的旧数据，合并时放在前面，保持 dupValFunc 看到的先后顺序
+     */
+    private Pending<VAL> mergePending(Pending<VAL> oldVal, Pending<VAL> newVal) {
+        long execTs = Math.min(oldVal.execTs, newVal.execTs);
+        if (oldVal.fields.isEmpty() && !newVal.fields.isEmpty()) {
+            return new Pending<>(dupValFunc.apply(newVal.val, oldVal.val), execTs, newVal.fields);
+        }
+        List<String> fields = oldVal.fields;
+        if (!newVal.fields.isEmpty()) {
+            fields = new ArrayList<>(oldVal.fields);
+            fields.addAll(newVal.fields);
+        }
+        return new Pending<>(dupValFunc.apply(oldVal.val, newVal.val), execTs, fields);
+    }
+
+    private void poll() {
+        try {
+            Set<String> dueMembers = redis.zrangeByScore(queueKey, 0, System.currentTimeMillis(), 0, pollBatchSize);
+            for (String member : dueMembers) {
+                if (!LEASE_OK.equals(redis.set(leaseKey(member), instanceId, "NX", "PX", leaseMs))) {
+                    continue; // 其他实例正在分发
+                }
+                try {
+                    consumerExecutor.execute(() -> dispatch(member));
+                } catch (RejectedExecutionException e) {
+                    releaseLease(member);
+                    break;
+                }
+            }
+        } catch (Throwable t) {
+            log.warn("poll redis delay queue exception. queue: {}", queueKey, t);
+        }
+    }
+
+    /**
+     * 调用前已经持有该 key 的租约
+     */
+    private void dispatch(String member) {
+        String valueKey = valueKey(member);
+        try {
+            // 可见性超时：消费过程中实例崩溃，租约过期后这个 key 会重新到期
+            redis.zadd(queueKey, System.currentTimeMillis() + leaseMs, member);
+            Map<String, String> fields = redis.hgetAll(valueKey);
+            if (fields != null && !fields.isEmpty()) {
+                consume(member, fields);
+                redis.hdel(valueKey, fields.keySet().toArray(new String[0]));
+            }
+            redis.zrem(queueKey, member);
+            requeueRemaining(member, valueKey);
+        } catch (Throwable t) {
+            log.warn("dispatch exception. key: {}", member, t);
+        } finally {
+            releaseLease(member);
+        }
+    }
+
+    private void consume(String member, Map<String, String> fields) {
+        List<Map.Entry<String, String>> sortedFields = new ArrayList<>(fields.entrySet());
+        sortedFields.sort(Comparator.comparingLong(entry -> fieldSeq(entry.getKey())));
+        VAL merged = null;
+        for (Map.Entry<String, String> field : sortedFields) {
+            VAL val = valCodec.decode(field.getValue());
+            merged = merged == null ? val : dupValFunc.apply(merged, val);
+        }
+        try {
+            upToTimeConsumer.accept(keyCodec.decode(member), merged);
+        } catch (Throwable t) {
+            log.warn("consume exception. key: {}", member, t);
+        }
+    }
+
+    /**
+     * 分发期间写入的 field 没有被消费，按其中最早的执行时间重新入队
+     */
+    private void requeueRemaining(String member, String valueKey) {
+        Set<String> remaining = redis.hkeys(valueKey);
+        if (remaining == null || remaining.isEmpty()) {
+            return;
+        }
+        long execTs = Long.MAX_VALUE;
+        for (String field : remaining) {
+            execTs = Math.min(execTs, fieldExecTs(field));
+        }
+        redis.zadd(queueKey, execTs, member);
+    }
+
+    private void releaseLease(String member) {
+        String leaseKey = leaseKey(member);
+        // 没有 compare-and-delete 命令，先确认租约还是自己的；极端情况下误删也只是让其他实例提前分发
+        if (instanceId.equals(redis.get(leaseKey))) {
+            redis.del(leaseKey);
+        }
+    }
+
+    private String valueKey(String member) {
+        return keyPrefix + "val:" + member;
+    }
+
+    private String leaseKey(String member) {
+        return keyPrefix + "lease:" + member;
+    }
+
+    private static long fieldSeq(String field) {
+        return Long.parseLong(field.substring(0, field.indexOf(':')));
+    }
+
+    private static long fieldExecTs(String field) {
+        return Long.parseLong(field.substring(field.lastIndexOf(':') + 1));
+    }
+
+    /**
+     * 本地合并时携带的值和最早的执行时间，fields 为写入失败前分配过的 hash field，没有写过 redis 时为空
+     */
+    private static class Pending<VAL> {
+        private final VAL val;
+        private final long execTs;
+        private final List<String> fields;
+
+        private Pending(VAL val, long execTs, List<String> fields) {
+            this.val = val;
+            this.execTs = execTs;
+            this.fields = fields;
+        }
+    }
+
+    public static <KEY, VAL> Builder<KEY, VAL> newBuilder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Builder 方式构建对象
+     */
+    @Accessors(fluent = true)
+    @Setter
+    public static class Builder<KEY, VAL> {
+        private RedisCommands redis;
+        /**
+         * redis key 的前缀，同一个集群的所有实例需要一致
+         */
+        private String name;
+        /**
+         * 实例 id，默认随机生成
+         */
+        private String instanceId;
+        private DelayBufferCodec<KEY> keyCodec;
+        private DelayBufferCodec<VAL> valCodec;
+        private BiConsumer<KEY, VAL> upToTimeConsumer;
+        private BiFunction<VAL, VAL, VAL> dupValConsumer;
+        /**
+         * 本地合并的最长时间，越长 redis 命令越少，分发时间的误差也越大
+         */
+        private long localFlushMs = 200;
+        /**
+         * 写入 redis 失败后，整批放回本地缓冲区等待重试的时间
+         */
+        private long flushRetryMs = 1000;
+        /**
+         * 本地缓冲区容量
+         */
+        private int localCapacity = 10000;
+        /**
+         * 分发租约时长，需要大于单个 key 的消费耗时
+         */
+        private long leaseMs = TimeUnit.SECONDS.toMillis(30);
+        /**
+         * 拉取到期 key 的间隔
+         */
+        private long pollIntervalMs = 100;
+        /**
+         * 每次拉取的最大 key 数量
+         */
+        private int pollBatchSize = 100;
+        /**
+         * 默认5个执行线程
+         */
+        private int executorCount = 5;
+
+        public RedisDelayBufferTrigger<KEY, VAL> build() {
+            Preconditions.checkNotNull(redis, "redis is required");
+            Preconditions.checkArgument(StringUtils.isNotBlank(name), "name is required");
+            Preconditions.checkArgument(instanceId == null || !instanceId.contains(":"), "instanceId must not contain ':'");
+            Preconditions.checkNotNull(keyCodec, "keyCodec is required");
+            Preconditions.checkNotNull(valCodec, "valCodec is required");
+            Preconditions.checkNotNull(upToTimeConsumer, "upToTimeConsumer is required");
+            Preconditions.checkNotNull(dupValConsumer, "dupValConsumer is required");
+            Preconditions.checkArgument(localFlushMs >= 0, "localFlushMs must not be negative");
+            Preconditions.checkArgument(flushRetryMs >= 0, "flushRetryMs must not be negative");
+            Preconditions.checkArgument(leaseMs > 0, "leaseMs must be positive");
+            Preconditions.checkArgument(pollIntervalMs > 0, "pollIntervalMs must be positive");
+            Preconditions.checkArgument(pollBatchSize > 0, "pollBatchSize must be positive");
+            Preconditions.checkArgument(executorCount > 0, "executorCount must be positive");
+            return new RedisDelayBufferTrigger<>(this);
+        }
+    }
+}
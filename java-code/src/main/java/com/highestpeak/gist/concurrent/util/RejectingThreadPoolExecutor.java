@@ -0,0 +1,80 @@
+package com.highestpeak.gist.concurrent.util;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.Preconditions;
+
+import lombok.Getter;
+
+/**
+ * 提前拒绝的线程池：每个任务带一个排队超时，避免突发流量下队列越积越长、每个任务都等到超时才执行的延迟螺旋
+ * <p>
+ * 两道防线：
+ * 1. 提交时按队列长度和最近的执行时间估计排队时间（{@link #predictQueueWaitNanos}），超过该任务的排队超时直接拒绝（计入 shed 和 rejected），
+ * 不进入队列；
+ * 2. 已经入队的任务在出队时如果已经排队超时，直接丢弃不执行（计入 expired），Future 会被取消。
+ * <p>
+ * 排队超时只限制排队时间，不限制执行时间；execute/submit 使用默认的排队超时，也可以为单个任务指定。
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+public class RejectingThreadPoolExecutor extends InstrumentedThreadPoolExecutor {
+
+    private final long defaultQueueTimeoutNanos;
+
+    /**
+     * 提交时因为预估排队时间超过排队超时而被提前拒绝的任务数
+     */
+    @Getter
+    private final LongAdder shed = new LongAdder();
+
+    public RejectingThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, int queueCapacity,
+            Duration defaultQueueTimeout, ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, queueCapacity, threadFactory, handler);
+        Preconditions.checkArgument(!defaultQueueTimeout.isNegative() && !defaultQueueTimeout.isZero(), "defaultQueueTimeout must be positive");
+        this.defaultQueueTimeoutNanos = defaultQueueTimeout.toNanos();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        execute(command, defaultQueueTimeoutNanos);
+    }
+
+    public void execute(Runnable command, Duration queueTimeout) {
+        execute(command, queueTimeout.toNanos());
+    }
+
+    public <T> Future<T> submit(Callable<T> task, Duration queueTimeout) {
+        Preconditions.checkNotNull(task);
+        RunnableFuture<T> future = newTaskFor(task);
+        execute(future, queueTimeout.toNanos());
+        return future;
+    }
+
+    public Future<?> submit(Runnable task, Duration queueTimeout) {
+        Preconditions.checkNotNull(task);
+        RunnableFuture<Void> future = newTaskFor(task, null);
+        execute(future, queueTimeout.toNanos());
+        return future;
+    }
+
+    private void execute(Runnable command, long queueTimeoutNanos) {
+        Preconditions.checkNotNull(command);
+        Preconditions.checkArgument(queueTimeoutNanos > 0, "queueTimeout must be positive");
+        if (!isShutdown() && predictQueueWaitNanos() > queueTimeoutNanos) {
+            // 排队到这个任务时它已经超时了，不如现在就拒绝，让调用方尽快降级
+            shed.increment();
+            getRejectedExecutionHandler().rejectedExecution(command, this);
+            return;
+        }
+        executeWithQueueTimeout(command, queueTimeoutNanos);
+    }
+}
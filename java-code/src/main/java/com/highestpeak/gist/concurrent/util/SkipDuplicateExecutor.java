@@ -0,0 +1,233 @@
+package com.highestpeak.gist.concurrent.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 按 key 去重的执行器：同一个 key 同一时刻最多执行一次，不会并行
+ * <p>
+ * 某个 key 正在执行时，后续提交合并成一次待执行（rerun），默认只保留最新的值（last value wins），也可以指定 merger 合并；
+ * 当前执行结束后再用合并后的值执行一次。每次提交返回的 future 在覆盖它的那次执行结束时完成，
+ * 被合并掉的提交和合并后的那次提交拿到的是同一个 future。
+ * <p>
+ * 同一个 key 的 rerun 会重新提交给底层执行器而不是在当前线程上循环，热点 key 不会一直占住一个线程。
+ * 排队的任务数不超过不同 key 的数量，所以底层线程池的队列可以不设上限。
+ * <p>
+ * {@link #newLaneExecutor} 按值把任务分到多个大小不同的线程池（例如按优先级加权），去重和串行仍然由同一份按 key 的状态保证，
+ * 同一个 key 前后两次提交落在不同的线程池上也不会并行执行。
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+@Slf4j
+public class SkipDuplicateExecutor<K, V> implements AutoCloseable {
+
+    /**
+     * 按待执行的值选择底层执行器，rerun 时按合并后的值重新选择
+     */
+    private final Function<? super V, ? extends Executor> executorSelector;
+    /**
+     * 由本类创建的线程池，close 之后所有 key 都执行完时关闭；外部传入的执行器时为空
+     */
+    private final List<ExecutorService> ownedExecutors;
+    private final BiConsumer<K, V> handler;
+    private final BinaryOperator<V> merger;
+    private final ConcurrentHashMap<K, KeyState<V>> states = new ConcurrentHashMap<>();
+
+    private volatile boolean closed;
+
+    /**
+     * @param executor 实际执行任务的执行器，例如虚拟线程执行器
+     * @param merger   合并待执行的值，(旧值, 新值) -> 合并值
+     */
+    public SkipDuplicateExecutor(Executor executor, BiConsumer<K, V> handler, BinaryOperator<V> merger) {
+        this(constant(Preconditions.checkNotNull(executor, "executor is required")), Collections.emptyList(), handler, merger);
+    }
+
+    private SkipDuplicateExecutor(Function<? super V, ? extends Executor> executorSelector, List<ExecutorService> ownedExecutors,
+            BiConsumer<K, V> handler, BinaryOperator<V> merger) {
+        this.executorSelector = executorSelector;
+        this.ownedExecutors = ownedExecutors;
+        this.handler = Preconditions.checkNotNull(handler, "handler is required");
+        this.merger = Preconditions.checkNotNull(merger, "merger is required");
+    }
+
+    /**
+     * 待执行的值只保留最新的
+     */
+    public static <K, V> SkipDuplicateExecutor<K, V> newExecutor(int parallelism, String threadName, BiConsumer<K, V> handler) {
+        return newExecutor(parallelism, threadName, handler, (oldValue, newValue) -> newValue);
+    }
+
+    /**
+     * @param threadName 线程名，可以包含 %d
+     */
+    public static <K, V> SkipDuplicateExecutor<K, V> newExecutor(int parallelism, String threadName, BiConsumer<K, V> handler,
+            BinaryOperator<V> merger) {
+        ExecutorService pool = newPool(parallelism, threadName);
+        return new SkipDuplicateExecutor<>(constant(pool), Collections.singletonList(pool), handler, merger);
+    }
+
+    /**
+     * 每个 lane 一个独立的线程池，按 laneOf(值) 选择执行的线程池，不同 lane 之间互不占用线程
+     *
+     * @param laneParallelism 每个 lane 的线程数
+     * @param laneThreadNames 每个 lane 的线程名，可以包含 %d
+     * @param laneOf          值所属的 lane，合并后的值按合并结果重新选择
+     */
+    public static <K, V> SkipDuplicateExecutor<K, V> newLaneExecutor(int[] laneParallelism, String[] laneThreadNames,
+            ToIntFunction<? super V> laneOf, BiConsumer<K, V> handler, BinaryOperator<V> merger) {
+        Preconditions.checkArgument(laneParallelism.length > 0 && laneParallelism.length == laneThreadNames.length,
+                "illegal lanes. parallelism: %s, threadNames: %s", laneParallelism.length, laneThreadNames.length);
+        Preconditions.checkNotNull(laneOf, "laneOf is required");
+        List<ExecutorService> pools = new ArrayList<>(laneParallelism.length);
+        for (int lane = 0; lane < laneParallelism.length; lane++) {
+            pools.add(newPool(laneParallelism[lane], laneThreadNames[lane]));
+        }
+        List<ExecutorService> lanePools = Collections.unmodifiableList(pools);
+        return new SkipDuplicateExecutor<>(value -> lanePools.get(laneOf.applyAsInt(value)), lanePools, handler, merger);
+    }
+
+    private static ExecutorService newPool(int parallelism, String threadName) {
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+        String nameFormat = threadName.contains("%d") ? threadName : threadName + "-%d";
+        return new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build());
+    }
+
+    private static <V> Function<V, Executor> constant(Executor executor) {
+        return value -> executor;
+    }
+
+    /**
+     * @return 覆盖本次提交的那次执行结束时完成，handler 抛出的异常会让 future 异常完成
+     */
+    public CompletableFuture<Void> submit(K key, V value) {
+        Preconditions.checkNotNull(key, "key is required");
+        if (closed) {
+            throw new RejectedExecutionException("executor is closed. key: " + key);
+        }
+        KeyState<V> created = new KeyState<>();
+        while (true) {
+            KeyState<V> state = states.putIfAbsent(key, created);
+            if (state == null) {
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                schedule(key, created, value, future);
+                return future;
+            }
+            synchronized (state) {
+                if (state.finished) { // 上一次执行刚刚结束并移除，重新放入
+                    continue;
+                }
+                if (state.pendingFuture == null) {
+                    state.pendingValue = value;
+                    state.pendingFuture = new CompletableFuture<>();
+                } else {
+                    state.pendingValue = merger.apply(state.pendingValue, value);
+                }
+                return state.pendingFuture;
+            }
+        }
+    }
+
+    /**
+     * 不再接收新的提交，已经提交的继续执行完，包括执行期间合并出的 rerun；自己创建的线程池等最后一个 key 执行完再关闭
+     */
+    @Override
+    public void close() {
+        closed = true;
+        shutdownOwnedExecutorsIfDrained();
+    }
+
+    /**
+     * 每个 key 的状态在最后一次执行结束后才移除，map 为空说明没有正在执行和待 rerun 的任务
+     */
+    private void shutdownOwnedExecutorsIfDrained() {
+        if (!closed || !states.isEmpty()) {
+            return;
+        }
+        for (ExecutorService ownedExecutor : ownedExecutors) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    private void schedule(K key, KeyState<V> state, V value, CompletableFuture<Void> future) {
+        try {
+            executorSelector.apply(value).execute(() -> run(key, state, value, future));
+        } catch (Throwable t) {
+            // 底层执行器拒绝，连同已经合并进来的提交一起失败
+            CompletableFuture<Void> pendingFuture;
+            synchronized (state) {
+                state.finished = true;
+                states.remove(key, state);
+                pendingFuture = state.pendingFuture;
+                state.pendingFuture = null;
+                state.pendingValue = null;
+            }
+            shutdownOwnedExecutorsIfDrained();
+            future.completeExceptionally(t);
+            if (pendingFuture != null) {
+                pendingFuture.completeExceptionally(t);
+            }
+            throw t;
+        }
+    }
+
+    private void run(K key, KeyState<V> state, V value, CompletableFuture<Void> future) {
+        try {
+            handler.accept(key, value);
+            future.complete(null);
+        } catch (Throwable t) {
+            log.warn("skip duplicate task exception. key: {}", key, t);
+            future.completeExceptionally(t);
+        }
+        V nextValue;
+        CompletableFuture<Void> nextFuture;
+        synchronized (state) {
+            nextValue = state.pendingValue;
+            nextFuture = state.pendingFuture;
+            state.pendingValue = null;
+            state.pendingFuture = null;
+            if (nextFuture == null) {
+                state.finished = true;
+                states.remove(key, state);
+            }
+        }
+        if (nextFuture == null) {
+            shutdownOwnedExecutorsIfDrained();
+            return;
+        }
+        try {
+            schedule(key, state, nextValue, nextFuture);
+        } catch (Throwable t) {
+            log.warn("skip duplicate rerun rejected. key: {}", key, t);
+        }
+    }
+
+    /**
+     * 一个 key 的执行状态，存在于 map 中表示该 key 正在执行或者排队
+     */
+    private static final class KeyState<V> {
+        private V pendingValue;
+        private CompletableFuture<Void> pendingFuture;
+        private boolean finished;
+    }
+}
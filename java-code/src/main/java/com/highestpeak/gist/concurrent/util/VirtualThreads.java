@@ -0,0 +1,75 @@
+package com.highestpeak.gist.concurrent.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 通过反射使用 Java 21 的虚拟线程，项目本身仍然按 Java 8 编译，低版本运行时返回不支持
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+@Slf4j
+final class VirtualThreads {
+
+    /**
+     * Thread.ofVirtual()
+     */
+    private static final Method OF_VIRTUAL;
+    /**
+     * Thread.Builder#name(String prefix, long start)
+     */
+    private static final Method BUILDER_NAME;
+    /**
+     * Thread.Builder#factory()
+     */
+    private static final Method BUILDER_FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        try {
+            // 方法要从公开的 Thread.Builder 接口上取，具体的 builder 实现类不是 public 的，直接反射调用会被拒绝
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+            // 预览版本的 JDK 上方法存在但调用会抛异常，这里先试一次
+            builderFactory.invoke(ofVirtual.invoke(null));
+        } catch (Throwable t) {
+            ofVirtual = null;
+            log.debug("virtual thread is not supported by current runtime: {}", t.toString());
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+    }
+
+    private VirtualThreads() {
+    }
+
+    static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @param namePrefix 线程名前缀，后面追加从 0 开始的序号
+     * @return 创建虚拟线程的 ThreadFactory，运行时不支持时返回 null
+     */
+    static ThreadFactory newFactory(String namePrefix) {
+        if (!isSupported()) {
+            return null;
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = BUILDER_NAME.invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            log.warn("create virtual thread factory failed, prefix: {}", namePrefix, e);
+            return null;
+        }
+    }
+}
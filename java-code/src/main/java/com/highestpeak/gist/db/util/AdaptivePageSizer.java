@@ -0,0 +1,124 @@
+package com.highestpeak.gist.db.util;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+import com.google.common.base.Preconditions;
+import com.highestpeak.gist.concurrent.util.LongHistogram;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+/**
+ * 按查询耗时和每页数据量自动调整分页大小
+ * <p>
+ * 每查询完一页，按 行数 * 目标耗时 / 实际耗时 估计在 targetFetchLatency 内能查询的行数；指定 rowBytes 时，
+ * 再按 targetPageBytes / 平均行大小 估计不超过内存预算的行数，取两者中较小的作为下一页的大小。
+ * 每次最多翻倍或者减半，结果限制在 [minPageSize, maxPageSize] 内；不满一页（扫描到末尾）时不会扩大。
+ * <p>
+ * 线程安全，可以在 {@link DBRangeScanner} 的多个区间之间共享。
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+public class AdaptivePageSizer<T> {
+
+    private static final double ROW_BYTES_EWMA_ALPHA = 0.2;
+
+    private final int minPageSize;
+    private final int maxPageSize;
+    private final long targetFetchNanos;
+    private final long targetPageBytes;
+    private final ToLongFunction<? super T> rowBytes;
+
+    /**
+     * 当前的分页大小
+     */
+    @Getter
+    private volatile int pageSize;
+    private double rowBytesEwma;
+
+    /**
+     * 每次调整后的分页大小
+     */
+    @Getter
+    private final LongHistogram pageSizes = new LongHistogram();
+    @Getter
+    private final LongHistogram fetchNanos = new LongHistogram();
+
+    private AdaptivePageSizer(Builder<T> builder) {
+        this.minPageSize = builder.minPageSize;
+        this.maxPageSize = builder.maxPageSize;
+        this.targetFetchNanos = builder.targetFetchLatency.toNanos();
+        this.targetPageBytes = builder.targetPageBytes;
+        this.rowBytes = builder.rowBytes;
+        this.pageSize = Math.min(Math.max(builder.initialPageSize, minPageSize), maxPageSize);
+    }
+
+    public static <T> Builder<T> newBuilder() {
+        return new Builder<>();
+    }
+
+    /**
+     * @param limit       这一页查询时使用的 limit
+     * @param elapsedNanos 这一页的查询耗时
+     */
+    public synchronized void onPageFetched(int limit, List<? extends T> rows, long elapsedNanos) {
+        fetchNanos.record(elapsedNanos);
+        if (rows.isEmpty()) {
+            return;
+        }
+        double desired = rows.size() * (double) targetFetchNanos / Math.max(elapsedNanos, 1);
+        if (rowBytes != null) {
+            long bytes = 0;
+            for (T row : rows) {
+                bytes += rowBytes.applyAsLong(row);
+            }
+            double avgRowBytes = Math.max((double) bytes / rows.size(), 1);
+            rowBytesEwma = rowBytesEwma == 0 ? avgRowBytes : rowBytesEwma + ROW_BYTES_EWMA_ALPHA * (avgRowBytes - rowBytesEwma);
+            desired = Math.min(desired, targetPageBytes / rowBytesEwma);
+        }
+        if (rows.size() < limit) {
+            // 扫描到末尾的页行数少、耗时短，不能据此扩大
+            desired = Math.min(desired, pageSize);
+        }
+        // 每次最多翻倍或者减半，避免一次偶然的慢查询把分页大小直接打到最小
+        desired = Math.min(Math.max(desired, pageSize / 2.0), pageSize * 2.0);
+        int next = (int) Math.min(Math.max(Math.round(desired), minPageSize), maxPageSize);
+        pageSize = next;
+        pageSizes.record(next);
+    }
+
+    /**
+     * Builder 方式构建对象
+     */
+    @Accessors(fluent = true)
+    @Setter
+    public static class Builder<T> {
+        private int initialPageSize = 1000;
+        private int minPageSize = 100;
+        private int maxPageSize = 10000;
+        /**
+         * 每页查询的目标耗时
+         */
+        private Duration targetFetchLatency = Duration.ofMillis(200);
+        /**
+         * 每页数据的内存预算，配合 rowBytes 使用
+         */
+        private long targetPageBytes = 16 * 1024 * 1024;
+        /**
+         * 估计一行数据占用的字节数，为 null 时不按内存预算调整
+         */
+        private ToLongFunction<? super T> rowBytes;
+
+        public AdaptivePageSizer<T> build() {
+            Preconditions.checkArgument(minPageSize > 0 && maxPageSize >= minPageSize,
+                    "illegal page size bounds. min: %s, max: %s", minPageSize, maxPageSize);
+            Preconditions.checkArgument(!targetFetchLatency.isNegative() && !targetFetchLatency.isZero(), "targetFetchLatency must be positive");
+            Preconditions.checkArgument(targetPageBytes > 0, "targetPageBytes must be positive");
+            return new AdaptivePageSizer<>(this);
+        }
+    }
+}
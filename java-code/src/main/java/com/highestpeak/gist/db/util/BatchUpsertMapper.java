@@ -0,0 +1,22 @@
+package com.highestpeak.gist.db.util;
+
+import java.util.Collection;
+
+import org.apache.ibatis.annotations.Param;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+
+/**
+ * 支持多行 upsert 的 Mapper，供 {@link DBBatchWriter} 使用
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+public interface BatchUpsertMapper<T> extends BaseMapper<T> {
+
+    /**
+     * 一条 sql 写入多行，id 已经存在时更新，例如 MySQL 的 insert into ... values (...), (...) on duplicate key update ...
+     * 需要在 xml 或者注解中实现，需要可以重复执行
+     */
+    int upsertBatch(@Param("list") Collection<T> entities);
+}
@@ -0,0 +1,324 @@
+package com.highestpeak.gist.db.util;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.highestpeak.gist.concurrent.util.ExecutorsEx;
+import com.highestpeak.gist.concurrent.util.InstrumentedThreadPoolExecutor;
+import com.highestpeak.gist.concurrent.util.LongHistogram;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 批量写入，和 {@link DBEntityIterator} 配合做 读取-转换-写回 的全表任务，代替逐行 updateById
+ * <p>
+ * write 把数据放进缓冲区，攒够 batchSize 行或者距离上次定时刷新超过 flushInterval 时，整批交给写线程池用
+ * {@link BatchUpsertMapper#upsertBatch} 一次写入，读取和写入在不同的线程上重叠进行。
+ * 排队和写入中的批次最多 maxPendingBatches 个，写入跟不上时 write 阻塞，反压到读取的一方。
+ * <p>
+ * 每批失败后按 retryBackoff 指数退避重试 maxRetries 次，仍然失败时交给 failureHandler（默认打印日志），不影响后面的批次。
+ * writeThreads 大于 1 时批次之间并行写入，同一行在不同批次中写入多次时不保证顺序。
+ * <p>
+ * flush 等待已经写入的数据全部落库；close 时会 flush，close 之后的 write 抛出异常。
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+@Slf4j
+public class DBBatchWriter<T> implements AutoCloseable {
+
+    /**
+     * 所有 writer 共用一个定时刷新线程，刷新只是把缓冲区交给写线程池
+     */
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("db-batch-writer-flusher").setDaemon(true).build());
+
+    private final BatchUpsertMapper<T> mapper;
+    private final int batchSize;
+    private final int maxPendingBatches;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    private final BiConsumer<List<T>, Throwable> failureHandler;
+
+    @Getter
+    private final InstrumentedThreadPoolExecutor writeExecutor;
+    /**
+     * 排队和写入中的批次占用一个许可
+     */
+    private final Semaphore pendingBatches;
+    private final ScheduledFuture<?> flushTask;
+
+    private List<T> buffer;
+    /**
+     * 和 buffer 一起由 this 保护
+     */
+    private boolean closed;
+    /**
+     * 已经从缓冲区取出、还没有提交给写线程池的批次数，close 等它归零后才关闭线程池
+     */
+    private int handingOff;
+
+    private final long startNanos = System.nanoTime();
+    @Getter
+    private final LongAdder writtenRows = new LongAdder();
+    @Getter
+    private final LongAdder failedRows = new LongAdder();
+    @Getter
+    private final LongAdder retries = new LongAdder();
+    /**
+     * 每批的写入耗时，包括重试
+     */
+    @Getter
+    private final LongHistogram batchNanos = new LongHistogram();
+
+    private DBBatchWriter(Builder<T> builder) {
+        this.mapper = builder.mapper;
+        this.batchSize = builder.batchSize;
+        this.maxPendingBatches = builder.maxPendingBatches;
+        this.maxRetries = builder.maxRetries;
+        this.retryBackoffMillis = builder.retryBackoff.toMillis();
+        this.failureHandler = builder.failureHandler;
+        this.buffer = new ArrayList<>(batchSize);
+        this.pendingBatches = new Semaphore(maxPendingBatches);
+        // 许可数不超过队列长度，正常情况下不会被拒绝
+        this.writeExecutor = ExecutorsEx.newInstrumentedThreadPool(builder.writeThreads, builder.writeThreads, maxPendingBatches,
+                builder.threadName);
+        long flushIntervalNanos = builder.flushInterval.toNanos();
+        this.flushTask = FLUSHER.scheduleWithFixedDelay(this::flushBuffer, flushIntervalNanos, flushIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public static <T> Builder<T> newBuilder() {
+        return new Builder<>();
+    }
+
+    /**
+     * 写入一行，缓冲区满时提交一批；排队的批次达到 maxPendingBatches 时阻塞到有批次写完
+     */
+    public void write(T entity) {
+        List<T> batch;
+        synchronized (this) {
+            Preconditions.checkState(!closed, "writer is closed");
+            buffer.add(entity);
+            if (buffer.size() < batchSize) {
+                return;
+            }
+            batch = buffer;
+            buffer = new ArrayList<>(batchSize);
+            handingOff++;
+        }
+        submitBlocking(batch);
+    }
+
+    /**
+     * 提交缓冲区中的数据，并等待已经提交的批次全部写完（包括重试）
+     */
+    public void flush() {
+        List<T> batch;
+        synchronized (this) {
+            batch = buffer;
+            buffer = new ArrayList<>(batchSize);
+            if (!batch.isEmpty()) {
+                handingOff++;
+            }
+        }
+        if (!batch.isEmpty()) {
+            submitBlocking(batch);
+        }
+        // 拿到全部许可说明没有排队和写入中的批次
+        pendingBatches.acquireUninterruptibly(maxPendingBatches);
+        pendingBatches.release(maxPendingBatches);
+    }
+
+    /**
+     * 从创建到现在平均每秒写入的行数
+     */
+    public double getRowsPerSecond() {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        return elapsedNanos <= 0 ? 0 : writtenRows.sum() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    /**
+     * 不再接收 write，等其他线程正在提交的批次提交完，再把缓冲区剩下的数据写完后关闭写线程池
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            awaitHandOffs();
+        }
+        flushTask.cancel(false);
+        flush();
+        // 和 close 并发调用的 flush 可能取走了缓冲区，提交完才能关闭线程池
+        synchronized (this) {
+            awaitHandOffs();
+        }
+        writeExecutor.shutdown();
+        log.info("batch writer closed. written: {}, failed: {}, retries: {}, rows/s: {}", writtenRows.sum(), failedRows.sum(),
+                retries.sum(), String.format("%.1f", getRowsPerSecond()));
+    }
+
+    /**
+     * 定时刷新：写入跟不上时不在刷新线程上等待，下次再试
+     */
+    private void flushBuffer() {
+        List<T> batch;
+        synchronized (this) {
+            // 关闭后缓冲区由 close 写完
+            if (closed || buffer.isEmpty() || !pendingBatches.tryAcquire()) {
+                return;
+            }
+            batch = buffer;
+            buffer = new ArrayList<>(batchSize);
+            handingOff++;
+        }
+        try {
+            submit(batch);
+        } catch (RuntimeException e) {
+            log.error("flush batch failed. size: {}", batch.size(), e);
+        } finally {
+            handOffDone();
+        }
+    }
+
+    /**
+     * 调用前 handingOff 已经加一，拿到许可后提交
+     */
+    private void submitBlocking(List<T> batch) {
+        try {
+            pendingBatches.acquireUninterruptibly();
+            submit(batch);
+        } finally {
+            handOffDone();
+        }
+    }
+
+    private synchronized void handOffDone() {
+        if (--handingOff == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * 持有 this 时调用，wait 期间释放锁，正在提交的线程可以进入 handOffDone
+     */
+    private void awaitHandOffs() {
+        boolean interrupted = false;
+        while (handingOff > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 调用前需要拿到一个许可，批次写完后释放
+     */
+    private void submit(List<T> batch) {
+        try {
+            writeExecutor.execute(() -> {
+                try {
+                    writeWithRetry(batch);
+                } finally {
+                    pendingBatches.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingBatches.release();
+            throw e;
+        }
+    }
+
+    private void writeWithRetry(List<T> batch) {
+        long batchStartNanos = System.nanoTime();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                mapper.upsertBatch(batch);
+                writtenRows.add(batch.size());
+                batchNanos.record(System.nanoTime() - batchStartNanos);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= maxRetries) {
+                    failedRows.add(batch.size());
+                    failureHandler.accept(batch, e);
+                    return;
+                }
+                retries.increment();
+                log.warn("batch upsert failed, will retry. size: {}, attempt: {}", batch.size(), attempt + 1, e);
+            }
+            try {
+                Thread.sleep(retryBackoffMillis << Math.min(attempt, 10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failedRows.add(batch.size());
+                failureHandler.accept(batch, e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Builder 方式构建对象
+     */
+    @Accessors(fluent = true)
+    @Setter
+    public static class Builder<T> {
+        private BatchUpsertMapper<T> mapper;
+        private int batchSize = 500;
+        /**
+         * 缓冲区中的数据最多等待多久写入
+         */
+        private Duration flushInterval = Duration.ofSeconds(1);
+        /**
+         * 写线程数，即写入的最大并发
+         */
+        private int writeThreads = 2;
+        /**
+         * 排队和写入中的批次上限，超过时 write 阻塞
+         */
+        private int maxPendingBatches = 4;
+        private int maxRetries = 3;
+        /**
+         * 第一次重试前的等待时间，之后每次翻倍
+         */
+        private Duration retryBackoff = Duration.ofMillis(100);
+        private String threadName = "db-batch-writer";
+        /**
+         * 重试后仍然失败的批次
+         */
+        private BiConsumer<List<T>, Throwable> failureHandler = (batch, e) -> log.error("batch upsert failed. size: {}", batch.size(), e);
+
+        public DBBatchWriter<T> build() {
+            Preconditions.checkNotNull(mapper, "mapper is required");
+            Preconditions.checkArgument(batchSize > 0, "batchSize must be positive");
+            Preconditions.checkArgument(writeThreads > 0, "writeThreads must be positive");
+            Preconditions.checkArgument(maxPendingBatches >= writeThreads, "maxPendingBatches must not be less than writeThreads");
+            Preconditions.checkArgument(maxRetries >= 0, "maxRetries must not be negative");
+            Preconditions.checkArgument(!flushInterval.isNegative() && !flushInterval.isZero(), "flushInterval must be positive");
+            Preconditions.checkNotNull(retryBackoff, "retryBackoff is required");
+            Preconditions.checkNotNull(failureHandler, "failureHandler is required");
+            return new DBBatchWriter<>(this);
+        }
+    }
+}
@@ -1,32 +1,120 @@
 package com.highestpeak.gist.db.util;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
+import org.apache.ibatis.cursor.Cursor;
+
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.baomidou.mybatisplus.core.toolkit.CollectionUtils;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.core.toolkit.support.SFunction;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 
+import lombok.AccessLevel;
 import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
 
 /**
+ * 按 id 游标分页（id > lastId limit pageSize）遍历整张表
+ * <p>
+ * 默认在 hasNext 发现当前页用完后同步查询下一页。指定 prefetchExecutor 后开启预取：调用方处理第 N 页时，
+ * 后面最多 prefetchPages 页已经在 prefetchExecutor 上依次查询，全表扫描的耗时取决于查询和处理中较慢的一方，而不是两者之和。
+ * 预取的查询在其他线程上执行，不在调用方的事务中；提前放弃遍历时已经发出的预取查询仍会执行完。
+ * <p>
+ * 指定 checkpointStore 后支持断点续扫：调用方处理完一批数据后调用 {@link #acknowledge()}，确认的进度每 checkpointRows 行
+ * 或者每 checkpointInterval 写入一次存储，创建时从保存的进度继续。进度只会推进到确认过的位置，不会跳过没处理完的数据；
+ * 崩溃时最后一次保存之后确认的数据会被重新处理一次。
+ * <p>
+ * 指定 pageSizer 后每页的大小由 {@link AdaptivePageSizer} 按查询耗时和每页数据量动态调整，pageSize 不再生效。
+ * <p>
+ * 指定 columns 后只查询这些列（id 总是会查询），其余字段为 null。开启 streaming 后通过 {@link StreamingMapper#selectCursor}
+ * 逐行读取每一页，不再把整页放到 List 中，pageSize 可以设置得很大；游标依赖打开它的 SqlSession，需要在同一个事务内遍历，
+ * 提前放弃遍历时调用 {@link #close()}。streaming 不能和预取、动态分页一起使用。
+ *
  * @author highestpeak <highestpeak@163.com>
  * Created on 2023-04-16
  */
 @Getter
-public class DBEntityIterator<T extends DBEntity> implements Iterator<T> {
+public class DBEntityIterator<T extends DBEntity> implements Iterator<T>, AutoCloseable {
 
     private static final int DEFAULT_PAGE_SIZE = 1000;
 
     private final int pageSize;
+    /**
+     * next 返回给调用方的最后一个 id，预取时后面的页可能已经查询出来，但不会计入
+     */
     private long offset;
+    /**
+     * 非 streaming 模式下已经取出的最后一页的最大 id，下一页从这里开始查询
+     */
+    @Getter(AccessLevel.NONE)
+    private long fetchedId;
     private final BaseMapper<T> entityMapper;
     private Iterator<T> iterator;
     private final Consumer<LambdaQueryWrapper<T>> condition;
     private final Class<T> entityClass;
+    /**
+     * 遍历的 id 上界（包含），为 null 时不限制
+     */
+    private final Long maxId;
+    /**
+     * 只查询的列，为 null 时查询所有列
+     */
+    @Getter(AccessLevel.NONE)
+    private final SFunction<T, ?>[] columns;
+    private final boolean streaming;
+    /**
+     * streaming 模式下当前页的游标
+     */
+    @Getter(AccessLevel.NONE)
+    private Cursor<T> cursor;
+    @Getter(AccessLevel.NONE)
+    private int cursorLimit;
+
+    private final Executor prefetchExecutor;
+    private final int prefetchPages;
+    /**
+     * 预取中的页，按顺序排列，每一页的查询依赖前一页的最大 id
+     */
+    @Getter(AccessLevel.NONE)
+    private final Deque<CompletableFuture<Page<T>>> prefetchedPages;
+    /**
+     * 预取或者 streaming 模式下最近消费的一页不满查询时的 limit，后面已经没有数据，不再查询
+     */
+    @Getter(AccessLevel.NONE)
+    private boolean exhausted;
+    /**
+     * 动态调整分页大小，为 null 时固定使用 pageSize
+     */
+    private final AdaptivePageSizer<? super T> pageSizer;
+
+    @Getter(AccessLevel.NONE)
+    private final ScanCheckpointer checkpointer;
+    /**
+     * 调用方已经确认处理完的最大 id
+     */
+    private volatile long committedId;
+    @Getter(AccessLevel.NONE)
+    private long returnedRows;
+    @Getter(AccessLevel.NONE)
+    private long acknowledgedRows;
 
     public DBEntityIterator(BaseMapper<T> entityMapper, Class<T> entityClass) {
         this(entityMapper, entityClass, query -> {});
@@ -41,33 +129,146 @@ public class DBEntityIterator<T extends DBEntity> implements Iterator<T> {
     }
 
     public DBEntityIterator(BaseMapper<T> entityMapper, Class<T> entityClass, Consumer<LambdaQueryWrapper<T>> condition, long offset, int pageSize) {
-        this.entityMapper = entityMapper;
-        this.entityClass = entityClass;
-        this.condition = condition;
-        this.offset = offset;
-        this.pageSize = pageSize;
-        iterator = dump().iterator();
+        this(DBEntityIterator.<T> newBuilder()
+                .entityMapper(entityMapper)
+                .entityClass(entityClass)
+                .condition(condition)
+                .offset(offset)
+                .pageSize(pageSize));
+    }
+
+    private DBEntityIterator(Builder<T> builder) {
+        this.entityMapper = builder.entityMapper;
+        this.entityClass = builder.entityClass;
+        this.condition = builder.condition;
+        this.offset = builder.offset;
+        this.pageSize = builder.pageSize;
+        this.maxId = builder.maxId;
+        this.columns = builder.projection();
+        this.streaming = builder.streaming;
+        this.prefetchExecutor = builder.prefetchExecutor;
+        this.prefetchPages = builder.prefetchPages;
+        this.pageSizer = builder.pageSizer;
+        this.prefetchedPages = prefetchExecutor == null ? null : new ArrayDeque<>(prefetchPages);
+        if (builder.checkpointStore != null) {
+            this.checkpointer = new ScanCheckpointer(builder.checkpointStore, builder.scanName, builder.checkpointRows,
+                    builder.checkpointInterval.toNanos(), () -> Collections.singletonMap(ScanCheckpointStore.SINGLE_RANGE, committedId));
+            Long savedId = checkpointer.load().get(ScanCheckpointStore.SINGLE_RANGE);
+            if (savedId != null && savedId > offset) {
+                this.offset = savedId;
+            }
+        } else {
+            this.checkpointer = null;
+        }
+        this.committedId = offset;
+        this.fetchedId = offset;
+        iterator = streaming ? openCursor() : dump().iterator();
+    }
+
+    public static <T extends DBEntity> Builder<T> newBuilder() {
+        return new Builder<>();
     }
 
     private List<T> dump() {
-        LambdaQueryWrapper<T> query = Wrappers.lambdaQuery(entityClass)
+        if (exhausted) {
+            return Collections.emptyList();
+        }
+        Page<T> page;
+        if (prefetchExecutor == null) {
+            page = selectPage(fetchedId);
+        } else {
+            if (prefetchedPages.isEmpty()) {
+                long lastId = fetchedId;
+                prefetchedPages.addLast(CompletableFuture.supplyAsync(() -> selectPage(lastId), prefetchExecutor));
+            }
+            page = join(prefetchedPages.pollFirst());
+        }
+
+        List<T> result = page.rows;
+        if (CollectionUtils.isNotEmpty(result)) {
+            fetchedId = result.get(result.size() - 1).getId();
+        }
+        if (prefetchExecutor != null) {
+            exhausted = page.isLast();
+            if (!exhausted) {
+                prefetchAhead();
+            }
+        }
+        return result;
+    }
+
+    private Page<T> selectPage(long lastId) {
+        int limit = pageSizer == null ? pageSize : pageSizer.getPageSize();
+        LambdaQueryWrapper<T> query = pageQuery(lastId, limit);
+        long startNanos = System.nanoTime();
+        List<T> rows = entityMapper.selectList(query);
+        if (pageSizer != null) {
+            pageSizer.onPageFetched(limit, rows, System.nanoTime() - startNanos);
+        }
+        return new Page<>(rows, limit);
+    }
+
+    private LambdaQueryWrapper<T> pageQuery(long lastId, int limit) {
+        LambdaQueryWrapper<T> query = Wrappers.lambdaQuery(entityClass);
+        if (columns != null) {
+            query.select(columns);
+        }
+        return query
                 // future: 可以支持其他的排序方法 ?
                 .orderByAsc(T::getId)
-                .gt(T::getId, offset)
+                .gt(T::getId, lastId)
+                .le(maxId != null, T::getId, maxId)
                 .func(condition)
-                .last(" limit " + pageSize);
-        List<T> result = entityMapper.selectList(query);
+                .last(" limit " + limit);
+    }
 
-        if (CollectionUtils.isNotEmpty(result)) {
-            offset = result.get(result.size() - 1).getId();
+    /**
+     * 关闭上一页的游标并打开下一页，上一页不满 limit 时不再查询
+     */
+    private Iterator<T> openCursor() {
+        if (cursor != null) {
+            // getCurrentIndex 是最后读取的一行的下标，从 0 开始
+            exhausted = cursor.getCurrentIndex() + 1 < cursorLimit;
+            close();
+        }
+        if (exhausted) {
+            return Collections.emptyIterator();
+        }
+        cursorLimit = pageSize;
+        cursor = ((StreamingMapper<T>) entityMapper).selectCursor(pageQuery(offset, cursorLimit));
+        return cursor.iterator();
+    }
+
+    /**
+     * 补齐预取的页，每一页在前一页查询完成后才能开始，前一页不满 limit 时不再查询
+     */
+    private void prefetchAhead() {
+        long lastId = fetchedId;
+        while (prefetchedPages.size() < prefetchPages) {
+            CompletableFuture<Page<T>> previous = prefetchedPages.peekLast();
+            CompletableFuture<Page<T>> next = previous == null
+                    ? CompletableFuture.supplyAsync(() -> selectPage(lastId), prefetchExecutor)
+                    : previous.thenApplyAsync(page -> page.isLast()
+                            ? new Page<>(Collections.emptyList(), page.limit) : selectPage(page.lastId()), prefetchExecutor);
+            prefetchedPages.addLast(next);
+        }
+    }
+
+    private Page<T> join(CompletableFuture<Page<T>> page) {
+        try {
+            return page.join();
+        } catch (CompletionException e) {
+            // 查询失败后丢弃依赖它的预取，下次 hasNext 从 fetchedId 重新查询
+            prefetchedPages.clear();
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
         }
-        return result;
     }
 
     @Override
     public boolean hasNext() {
         if (!iterator.hasNext()) {
-            iterator = dump().iterator();
+            iterator = streaming ? openCursor() : dump().iterator();
         }
         return iterator.hasNext();
     }
@@ -75,8 +276,163 @@ public class DBEntityIterator<T extends DBEntity> implements Iterator<T> {
     @Override
     public T next() {
         if (hasNext()) {
-            return iterator.next();
+            T entity = iterator.next();
+            offset = entity.getId();
+            returnedRows++;
+            return entity;
         }
         throw new NoSuchElementException();
     }
-}
\ No newline at end of file
+
+    /**
+     * 确认 next 返回过的数据都已经处理完，进度推进到最后返回的 id，达到 checkpointRows 或者 checkpointInterval 时写入存储
+     */
+    public void acknowledge() {
+        long rows = returnedRows - acknowledgedRows;
+        if (rows == 0) {
+            return;
+        }
+        acknowledgedRows = returnedRows;
+        committedId = offset;
+        if (checkpointer != null) {
+            checkpointer.onAcknowledged(rows);
+        }
+    }
+
+    /**
+     * 立即把已经确认的进度写入存储，一般在扫描结束或者停止前调用
+     */
+    public void checkpoint() {
+        Preconditions.checkState(checkpointer != null, "checkpointStore is not configured");
+        checkpointer.checkpoint();
+    }
+
+    /**
+     * 关闭 streaming 模式下还没有读完的游标，非 streaming 模式下什么也不做
+     */
+    @Override
+    public void close() {
+        if (cursor == null) {
+            return;
+        }
+        try {
+            cursor.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            cursor = null;
+        }
+    }
+
+    /**
+     * Builder 方式构建对象
+     */
+    @Accessors(fluent = true)
+    @Setter
+    public static class Builder<T extends DBEntity> {
+        private BaseMapper<T> entityMapper;
+        private Class<T> entityClass;
+        private Consumer<LambdaQueryWrapper<T>> condition = query -> {};
+        /**
+         * 从 id 大于 offset 的数据开始遍历
+         */
+        private long offset;
+        /**
+         * 遍历到 id 小于等于 maxId 的数据为止，为 null 时不限制
+         */
+        private Long maxId;
+        private int pageSize = DEFAULT_PAGE_SIZE;
+        /**
+         * 动态调整分页大小，指定后 pageSize 不再生效
+         */
+        private AdaptivePageSizer<? super T> pageSizer;
+        /**
+         * 只查询的列，id 总是会查询
+         */
+        private List<SFunction<T, ?>> columns;
+        /**
+         * 通过 {@link StreamingMapper#selectCursor} 逐行读取，entityMapper 需要实现 StreamingMapper
+         */
+        private boolean streaming;
+        /**
+         * 执行预取查询的线程池，为 null 时不预取
+         */
+        private Executor prefetchExecutor;
+        /**
+         * 最多预取的页数
+         */
+        private int prefetchPages = 1;
+        /**
+         * 保存扫描进度的存储，为 null 时不保存
+         */
+        private ScanCheckpointStore checkpointStore;
+        /**
+         * 扫描的名字，同一个名字共享进度
+         */
+        private String scanName;
+        private long checkpointRows = 10000;
+        private Duration checkpointInterval = Duration.ofSeconds(10);
+
+        public DBEntityIterator<T> build() {
+            Preconditions.checkNotNull(entityMapper, "entityMapper is required");
+            Preconditions.checkNotNull(entityClass, "entityClass is required");
+            Preconditions.checkNotNull(condition, "condition is required");
+            Preconditions.checkArgument(pageSize > 0, "pageSize must be positive");
+            Preconditions.checkArgument(prefetchPages > 0, "prefetchPages must be positive");
+            if (streaming) {
+                Preconditions.checkArgument(entityMapper instanceof StreamingMapper, "streaming requires a StreamingMapper");
+                Preconditions.checkArgument(prefetchExecutor == null, "streaming does not support prefetch");
+                Preconditions.checkArgument(pageSizer == null, "streaming does not support pageSizer");
+            }
+            if (checkpointStore != null) {
+                Preconditions.checkArgument(scanName != null && !scanName.isEmpty(), "scanName is required for checkpoint");
+                Preconditions.checkArgument(checkpointRows > 0, "checkpointRows must be positive");
+                Preconditions.checkNotNull(checkpointInterval, "checkpointInterval is required");
+            }
+            return new DBEntityIterator<>(this);
+        }
+
+        @SafeVarargs
+        public final Builder<T> columns(SFunction<T, ?>... columns) {
+            return columns(Arrays.asList(columns));
+        }
+
+        public Builder<T> columns(List<SFunction<T, ?>> columns) {
+            this.columns = columns;
+            return this;
+        }
+
+        @SuppressWarnings("unchecked")
+        private SFunction<T, ?>[] projection() {
+            if (columns == null || columns.isEmpty()) {
+                return null;
+            }
+            // 游标分页依赖 id
+            List<SFunction<T, ?>> projection = new ArrayList<>(columns.size() + 1);
+            projection.add(T::getId);
+            projection.addAll(columns);
+            return projection.toArray(new SFunction[0]);
+        }
+    }
+
+    /**
+     * 一页查询结果和查询时使用的 limit，动态调整分页大小时每页的 limit 可能不同
+     */
+    private static class Page<T extends DBEntity> {
+        private final List<T> rows;
+        private final int limit;
+
+        Page(List<T> rows, int limit) {
+            this.rows = rows;
+            this.limit = limit;
+        }
+
+        boolean isLast() {
+            return rows.size() < limit;
+        }
+
+        long lastId() {
+            return rows.get(rows.size() - 1).getId();
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.highestpeak.gist.db.util;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.baomidou.mybatisplus.core.toolkit.CollectionUtils;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.core.toolkit.support.SFunction;
+import com.google.common.base.Preconditions;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+/**
+ * 按 id 区间并行的全表扫描
+ * <p>
+ * 把 id 空间切分成若干区间，每个区间用一个 {@link DBEntityIterator} 按 id 游标分页遍历，结果以 {@link Spliterator} 的形式暴露，
+ * {@code stream().parallel()} 或者 fork-join 消费时，区间被拆分到不同的线程上并行处理。
+ * 查询可以交给一个有界的 queryExecutor 执行（同时作为各区间的预取线程池），数据库的并发不超过它的线程数。
+ * <p>
+ * 区间的切分方式：
+ * 1. 默认按 min(id)/max(id) 均分成 rangeCount 个区间，扫描开始后新插入的 id 大于 max(id) 的数据不会被扫描到；
+ * 2. 指定 splitPoints（例如按采样得到的 id 分位点），id 分布不均匀时各区间的数据量更接近，最后一个区间不设上限。
+ * <p>
+ * 每个区间独立记录已经处理完的最大 id（{@link Range#getOffset()}），可以保存后通过 {@link Builder#ranges} 从断点继续扫描。
+ * 指定 checkpointStore 后各区间的进度按 checkpointRows 行或者 checkpointInterval 自动保存，创建时从保存的进度继续。
+ * 一行数据在 Spliterator 的 action 执行完之后才算确认，保存的进度不会跳过没处理完的数据。
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+@Getter
+public class DBRangeScanner<T extends DBEntity> {
+
+    private final BaseMapper<T> entityMapper;
+    private final Class<T> entityClass;
+    private final Consumer<LambdaQueryWrapper<T>> condition;
+    private final int pageSize;
+    private final Executor queryExecutor;
+    private final int prefetchPages;
+    private final AdaptivePageSizer<? super T> pageSizer;
+    private final List<SFunction<T, ?>> columns;
+    private final List<Range> ranges;
+    @Getter(AccessLevel.NONE)
+    private final ScanCheckpointer checkpointer;
+
+    private DBRangeScanner(Builder<T> builder) {
+        this.entityMapper = builder.entityMapper;
+        this.entityClass = builder.entityClass;
+        this.condition = builder.condition;
+        this.pageSize = builder.pageSize;
+        this.queryExecutor = builder.queryExecutor;
+        this.prefetchPages = builder.prefetchPages;
+        this.pageSizer = builder.pageSizer;
+        this.columns = builder.columns;
+        this.checkpointer = builder.checkpointStore == null ? null : new ScanCheckpointer(builder.checkpointStore, builder.scanName,
+                builder.checkpointRows, builder.checkpointInterval.toNanos(), this::snapshot);
+        Map<String, Long> saved = checkpointer == null || builder.ranges != null ? Collections.emptyMap() : checkpointer.load();
+        if (builder.ranges != null) {
+            this.ranges = Collections.unmodifiableList(new ArrayList<>(builder.ranges));
+        } else if (!saved.isEmpty()) {
+            this.ranges = restore(saved);
+        } else if (builder.splitPoints != null) {
+            this.ranges = splitByPoints(builder.startId, builder.splitPoints);
+        } else {
+            this.ranges = splitByMinMax(builder.startId, builder.rangeCount);
+        }
+    }
+
+    public static <T extends DBEntity> Builder<T> newBuilder() {
+        return new Builder<>();
+    }
+
+    /**
+     * 每次调用返回一个新的 Spliterator，已经完成的区间会被跳过，未完成的区间从 offset 继续
+     */
+    public Spliterator<T> spliterator() {
+        List<Range> pending = new ArrayList<>(ranges.size());
+        for (Range range : ranges) {
+            if (!range.completed) {
+                pending.add(range);
+            }
+        }
+        return new RangeSpliterator(pending);
+    }
+
+    public Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * 立即保存各区间的进度，一般在扫描结束或者停止前调用
+     */
+    public void checkpoint() {
+        Preconditions.checkState(checkpointer != null, "checkpointStore is not configured");
+        checkpointer.checkpoint();
+    }
+
+    /**
+     * @return 所有区间是否都已经扫描完成
+     */
+    public boolean isCompleted() {
+        return ranges.stream().allMatch(Range::isCompleted);
+    }
+
+    /**
+     * 区间 -> 进度，已经完成的有界区间记为 endId
+     */
+    private Map<String, Long> snapshot() {
+        Map<String, Long> checkpoint = new HashMap<>(ranges.size() * 2);
+        for (Range range : ranges) {
+            boolean finished = range.completed && range.endId != Long.MAX_VALUE;
+            checkpoint.put(range.startId + ":" + range.endId, finished ? range.endId : range.offset);
+        }
+        return checkpoint;
+    }
+
+    private List<Range> restore(Map<String, Long> saved) {
+        List<Range> result = new ArrayList<>(saved.size());
+        saved.forEach((key, offset) -> {
+            int split = key.indexOf(':', 1);
+            long startId = Long.parseLong(key.substring(0, split));
+            long endId = Long.parseLong(key.substring(split + 1));
+            result.add(new Range(startId, endId, offset, endId != Long.MAX_VALUE && offset >= endId));
+        });
+        result.sort(Comparator.comparingLong(Range::getStartId));
+        return Collections.unmodifiableList(result);
+    }
+
+    private List<Range> splitByPoints(long startId, List<Long> splitPoints) {
+        List<Long> points = new ArrayList<>(splitPoints);
+        Collections.sort(points);
+        List<Range> result = new ArrayList<>(points.size() + 1);
+        long lower = startId;
+        for (Long point : points) {
+            if (point > lower) {
+                result.add(new Range(lower, point));
+                lower = point;
+            }
+        }
+        result.add(new Range(lower, Long.MAX_VALUE));
+        return Collections.unmodifiableList(result);
+    }
+
+    private List<Range> splitByMinMax(long startId, int rangeCount) {
+        Long minId = selectBoundId(true, startId);
+        // 两次查询之间数据可能被删光
+        Long maxId = minId == null ? null : selectBoundId(false, startId);
+        if (minId == null || maxId == null) {
+            return Collections.emptyList();
+        }
+        long lower = minId - 1;
+        // 向上取整，保证最后一个区间覆盖到 maxId
+        long step = Math.max(1, (maxId - lower + rangeCount - 1) / rangeCount);
+        List<Range> result = new ArrayList<>(rangeCount);
+        while (lower < maxId) {
+            long upper = maxId - lower <= step ? maxId : lower + step;
+            result.add(new Range(lower, upper));
+            lower = upper;
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private Long selectBoundId(boolean min, long startId) {
+        LambdaQueryWrapper<T> query = Wrappers.lambdaQuery(entityClass)
+                .select(T::getId)
+                .gt(T::getId, startId)
+                .func(condition)
+                .last(" limit 1");
+        List<T> result = entityMapper.selectList(min ? query.orderByAsc(T::getId) : query.orderByDesc(T::getId));
+        return CollectionUtils.isEmpty(result) ? null : result.get(0).getId();
+    }
+
+    /**
+     * 一个 id 区间 (startId, endId]，offset 为该区间内已经处理完的最大 id
+     */
+    @Getter
+    public static final class Range {
+        private final long startId;
+        /**
+         * Long.MAX_VALUE 表示不限制
+         */
+        private final long endId;
+        private volatile long offset;
+        private volatile boolean completed;
+
+        public Range(long startId, long endId) {
+            this(startId, endId, startId, false);
+        }
+
+        /**
+         * 从保存的进度恢复
+         */
+        public Range(long startId, long endId, long offset, boolean completed) {
+            Preconditions.checkArgument(startId < endId, "illegal range (%s, %s]", startId, endId);
+            this.startId = startId;
+            this.endId = endId;
+            this.offset = offset;
+            this.completed = completed;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + startId + ", " + endId + "] offset: " + offset + (completed ? " completed" : "");
+        }
+    }
+
+    /**
+     * 持有若干个区间，按顺序依次遍历；遍历开始前可以把前一半区间拆分出去
+     */
+    private final class RangeSpliterator implements Spliterator<T> {
+        private final List<Range> pending;
+        private int next;
+        private Range current;
+        private DBEntityIterator<T> iterator;
+
+        private RangeSpliterator(List<Range> pending) {
+            this.pending = pending;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            while (true) {
+                if (iterator == null) {
+                    if (next >= pending.size()) {
+                        return false;
+                    }
+                    current = pending.get(next++);
+                    iterator = DBEntityIterator.<T> newBuilder()
+                            .entityMapper(entityMapper)
+                            .entityClass(entityClass)
+                            .condition(condition)
+                            .offset(current.offset)
+                            .maxId(current.endId == Long.MAX_VALUE ? null : current.endId)
+                            .pageSize(pageSize)
+                            .prefetchExecutor(queryExecutor)
+                            .prefetchPages(prefetchPages)
+                            .pageSizer(pageSizer)
+                            .columns(columns)
+                            .build();
+                }
+                if (iterator.hasNext()) {
+                    T entity = iterator.next();
+                    action.accept(entity);
+                    // action 执行完才算处理完，断点恢复时不会跳过处理到一半的数据
+                    current.offset = entity.getId();
+                    if (checkpointer != null) {
+                        checkpointer.onAcknowledged(1);
+                    }
+                    return true;
+                }
+                current.completed = true;
+                current = null;
+                iterator = null;
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            // 已经开始遍历的区间不能交出去，否则拆出来的不再是前缀，破坏 ORDERED 语义
+            int remaining = pending.size() - next;
+            if (iterator != null || remaining < 2) {
+                return null;
+            }
+            int mid = next + remaining / 2;
+            List<Range> prefix = new ArrayList<>(pending.subList(next, mid));
+            pending.subList(next, mid).clear();
+            return new RangeSpliterator(prefix);
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+
+    /**
+     * Builder 方式构建对象
+     */
+    @Accessors(fluent = true)
+    @Setter
+    public static class Builder<T extends DBEntity> {
+        private BaseMapper<T> entityMapper;
+        private Class<T> entityClass;
+        private Consumer<LambdaQueryWrapper<T>> condition = query -> {};
+        private int pageSize = 1000;
+        /**
+         * 执行查询的有界线程池，线程数即数据库的最大并发；为 null 时在消费线程上同步查询
+         */
+        private Executor queryExecutor;
+        private int prefetchPages = 1;
+        /**
+         * 动态调整分页大小，所有区间共享，指定后 pageSize 不再生效
+         */
+        private AdaptivePageSizer<? super T> pageSizer;
+        /**
+         * 只查询的列，id 总是会查询
+         */
+        private List<SFunction<T, ?>> columns;
+        /**
+         * 只扫描 id 大于 startId 的数据
+         */
+        private long startId;
+        /**
+         * 按 min(id)/max(id) 均分的区间数
+         */
+        private int rangeCount = Runtime.getRuntime().availableProcessors();
+        /**
+         * 指定切分点，优先于 rangeCount
+         */
+        private List<Long> splitPoints;
+        /**
+         * 从保存的区间进度恢复，优先于 splitPoints 和 rangeCount
+         */
+        private List<Range> ranges;
+        /**
+         * 保存各区间进度的存储，为 null 时不保存；没有指定 ranges 时优先从保存的进度恢复
+         */
+        private ScanCheckpointStore checkpointStore;
+        private String scanName;
+        private long checkpointRows = 10000;
+        private Duration checkpointInterval = Duration.ofSeconds(10);
+
+        public DBRangeScanner<T> build() {
+            Preconditions.checkNotNull(entityMapper, "entityMapper is required");
+            Preconditions.checkNotNull(entityClass, "entityClass is required");
+            Preconditions.checkNotNull(condition, "condition is required");
+            Preconditions.checkArgument(pageSize > 0, "pageSize must be positive");
+            Preconditions.checkArgument(prefetchPages > 0, "prefetchPages must be positive");
+            Preconditions.checkArgument(rangeCount > 0, "rangeCount must be positive");
+            if (checkpointStore != null) {
+                Preconditions.checkArgument(scanName != null && !scanName.isEmpty(), "scanName is required for checkpoint");
+                Preconditions.checkArgument(checkpointRows > 0, "checkpointRows must be positive");
+                Preconditions.checkNotNull(checkpointInterval, "checkpointInterval is required");
+            }
+            return new DBRangeScanner<>(this);
+        }
+
+        @SafeVarargs
+        public final Builder<T> columns(SFunction<T, ?>... columns) {
+            return columns(Arrays.asList(columns));
+        }
+
+        public Builder<T> columns(List<SFunction<T, ?>> columns) {
+            this.columns = columns;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.highestpeak.gist.db.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * 每个扫描一个 properties 文件的 {@link ScanCheckpointStore}，先写临时文件再原子替换，写到一半崩溃不会损坏已有的进度
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+public class FileScanCheckpointStore implements ScanCheckpointStore {
+
+    private static final String SUFFIX = ".checkpoint";
+
+    private final Path dir;
+
+    public FileScanCheckpointStore(Path dir) {
+        this.dir = Preconditions.checkNotNull(dir, "dir is required");
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Map<String, Long> load(String scanName) {
+        Path path = path(scanName);
+        Map<String, Long> checkpoint = new HashMap<>();
+        if (!Files.exists(path)) {
+            return checkpoint;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (String range : properties.stringPropertyNames()) {
+            checkpoint.put(range, Long.parseLong(properties.getProperty(range)));
+        }
+        return checkpoint;
+    }
+
+    @Override
+    public void save(String scanName, Map<String, Long> checkpoint) {
+        Properties properties = new Properties();
+        checkpoint.forEach((range, id) -> properties.setProperty(range, String.valueOf(id)));
+        Path path = path(scanName);
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                properties.store(writer, scanName);
+            }
+            try {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void clear(String scanName) {
+        try {
+            Files.deleteIfExists(path(scanName));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path path(String scanName) {
+        Preconditions.checkArgument(scanName != null && !scanName.isEmpty() && scanName.indexOf('/') < 0 && scanName.indexOf('\\') < 0,
+                "illegal scanName: %s", scanName);
+        return dir.resolve(scanName + SUFFIX);
+    }
+}
@@ -0,0 +1,54 @@
+package com.highestpeak.gist.db.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.highestpeak.gist.facade.api.RedisCommands;
+
+/**
+ * 基于 redis hash 的 {@link ScanCheckpointStore}，一个扫描一个 hash，field 为区间，多台机器可以共享进度
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+public class RedisScanCheckpointStore implements ScanCheckpointStore {
+
+    private final RedisCommands redis;
+    private final String keyPrefix;
+
+    public RedisScanCheckpointStore(RedisCommands redis, String keyPrefix) {
+        this.redis = Preconditions.checkNotNull(redis, "redis is required");
+        this.keyPrefix = Preconditions.checkNotNull(keyPrefix, "keyPrefix is required");
+    }
+
+    @Override
+    public Map<String, Long> load(String scanName) {
+        Map<String, String> hash = redis.hgetAll(key(scanName));
+        Map<String, Long> checkpoint = new HashMap<>();
+        if (hash != null) {
+            hash.forEach((range, id) -> checkpoint.put(range, Long.parseLong(id)));
+        }
+        return checkpoint;
+    }
+
+    @Override
+    public void save(String scanName, Map<String, Long> checkpoint) {
+        if (checkpoint.isEmpty()) {
+            return;
+        }
+        Map<String, String> hash = new HashMap<>(checkpoint.size());
+        checkpoint.forEach((range, id) -> hash.put(range, String.valueOf(id)));
+        // 区间在一次扫描中是固定的，hmset 覆盖所有 field 即可
+        redis.hmset(key(scanName), hash);
+    }
+
+    @Override
+    public void clear(String scanName) {
+        redis.del(key(scanName));
+    }
+
+    private String key(String scanName) {
+        return keyPrefix + scanName;
+    }
+}
@@ -0,0 +1,32 @@
+package com.highestpeak.gist.db.util;
+
+import java.util.Map;
+
+/**
+ * 全表扫描进度的持久化存储，进程重启后从保存的进度继续扫描
+ * <p>
+ * 一次扫描的进度是 区间 -> 已经确认处理完的最大 id，单个 {@link DBEntityIterator} 只有一个区间 {@link #SINGLE_RANGE}，
+ * {@link DBRangeScanner} 每个区间一项，区间格式为 startId:endId。
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+public interface ScanCheckpointStore {
+
+    String SINGLE_RANGE = "all";
+
+    /**
+     * @return 没有保存过时返回空 map
+     */
+    Map<String, Long> load(String scanName);
+
+    /**
+     * 覆盖保存整个扫描的进度
+     */
+    void save(String scanName, Map<String, Long> checkpoint);
+
+    /**
+     * 扫描完成后可以删除进度，下次从头开始
+     */
+    void clear(String scanName);
+}
@@ -0,0 +1,81 @@
+package com.highestpeak.gist.db.util;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 按确认的行数或者时间间隔把扫描进度写入 {@link ScanCheckpointStore}
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+@Slf4j
+final class ScanCheckpointer {
+
+    private final ScanCheckpointStore store;
+    private final String scanName;
+    private final long everyRows;
+    private final long intervalNanos;
+    private final Supplier<Map<String, Long>> snapshot;
+
+    private final AtomicLong pendingRows = new AtomicLong();
+    private final ReentrantLock saveLock = new ReentrantLock();
+    private volatile long lastSaveNanos = System.nanoTime();
+
+    /**
+     * @param snapshot 返回当前已经确认的进度
+     */
+    ScanCheckpointer(ScanCheckpointStore store, String scanName, long everyRows, long intervalNanos, Supplier<Map<String, Long>> snapshot) {
+        this.store = store;
+        this.scanName = scanName;
+        this.everyRows = everyRows;
+        this.intervalNanos = intervalNanos;
+        this.snapshot = snapshot;
+    }
+
+    Map<String, Long> load() {
+        return store.load(scanName);
+    }
+
+    /**
+     * 确认了 rows 行，达到行数或者时间间隔时保存；已经有线程在保存时直接返回
+     */
+    void onAcknowledged(long rows) {
+        if (pendingRows.addAndGet(rows) < everyRows && System.nanoTime() - lastSaveNanos < intervalNanos) {
+            return;
+        }
+        if (!saveLock.tryLock()) {
+            return;
+        }
+        try {
+            save();
+        } catch (Exception e) {
+            // 保存失败不影响扫描，下次达到条件时重试
+            log.warn("save scan checkpoint exception. scanName: {}", scanName, e);
+        } finally {
+            saveLock.unlock();
+        }
+    }
+
+    /**
+     * 立即保存，失败时抛出异常
+     */
+    void checkpoint() {
+        saveLock.lock();
+        try {
+            save();
+        } finally {
+            saveLock.unlock();
+        }
+    }
+
+    private void save() {
+        pendingRows.set(0);
+        lastSaveNanos = System.nanoTime();
+        store.save(scanName, snapshot.get());
+    }
+}
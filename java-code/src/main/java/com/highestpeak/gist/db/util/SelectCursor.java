@@ -0,0 +1,45 @@
+package com.highestpeak.gist.db.util;
+
+import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.mapping.StatementType;
+
+import com.baomidou.mybatisplus.core.injector.AbstractMethod;
+import com.baomidou.mybatisplus.core.metadata.TableInfo;
+
+/**
+ * 注入 {@link StreamingMapper#selectCursor}：和 selectList 相同的 sql，FORWARD_ONLY 结果集，带 fetchSize
+ * <p>
+ * fetchSize 的含义取决于驱动：MySQL 需要 Integer.MIN_VALUE（逐行读取），或者连接参数 useCursorFetch=true 时的正数；
+ * PostgreSQL 需要在事务中（autocommit 关闭）使用正数。
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+public class SelectCursor extends AbstractMethod {
+
+    private static final String METHOD_NAME = "selectCursor";
+    private static final String SQL = "<script>%s SELECT %s FROM %s %s %s\n</script>";
+
+    private final int fetchSize;
+
+    public SelectCursor(int fetchSize) {
+        super(METHOD_NAME);
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public MappedStatement injectMappedStatement(Class<?> mapperClass, Class<?> modelClass, TableInfo tableInfo) {
+        String sql = String.format(SQL, sqlFirst(), sqlSelectColumns(tableInfo, true), tableInfo.getTableName(),
+                sqlWhereEntityWrapper(true, tableInfo), sqlComment());
+        SqlSource sqlSource = languageDriver.createSqlSource(configuration, sql, modelClass);
+        String resultMap = tableInfo.getResultMap();
+        // addSelectMappedStatementForTable 不能指定 fetchSize 和 resultSetType，这里直接注册
+        return builderAssistant.addMappedStatement(METHOD_NAME, sqlSource, StatementType.PREPARED, SqlCommandType.SELECT,
+                fetchSize, null, null, null, resultMap, resultMap == null ? tableInfo.getEntityType() : null, ResultSetType.FORWARD_ONLY,
+                false, false, false, NoKeyGenerator.INSTANCE, null, null, configuration.getDatabaseId(), languageDriver);
+    }
+}
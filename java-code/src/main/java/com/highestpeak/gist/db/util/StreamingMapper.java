@@ -0,0 +1,22 @@
+package com.highestpeak.gist.db.util;
+
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.baomidou.mybatisplus.core.toolkit.Constants;
+
+/**
+ * 支持游标查询的 Mapper，查询结果逐行从数据库读取，不会把整页数据放到一个 List 中
+ * <p>
+ * selectCursor 由 {@link StreamingSqlInjector} 注入，需要把它注册为 mybatis-plus 的 ISqlInjector；fetchSize 在注入时指定。
+ * 返回的 Cursor 依赖打开它的 SqlSession，在 Spring 中需要在同一个事务内遍历完，遍历结束或者提前放弃时需要关闭。
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+public interface StreamingMapper<T> extends BaseMapper<T> {
+
+    Cursor<T> selectCursor(@Param(Constants.WRAPPER) Wrapper<T> queryWrapper);
+}
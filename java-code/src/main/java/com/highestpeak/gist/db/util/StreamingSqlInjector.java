@@ -0,0 +1,40 @@
+package com.highestpeak.gist.db.util;
+
+import java.util.List;
+
+import com.baomidou.mybatisplus.core.injector.AbstractMethod;
+import com.baomidou.mybatisplus.core.injector.DefaultSqlInjector;
+import com.baomidou.mybatisplus.core.metadata.TableInfo;
+
+/**
+ * 在默认方法之外为 {@link StreamingMapper} 注入 selectCursor，例如：
+ * <pre>
+ * &#64;Bean
+ * public ISqlInjector sqlInjector() {
+ *     return new StreamingSqlInjector(Integer.MIN_VALUE);
+ * }
+ * </pre>
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+public class StreamingSqlInjector extends DefaultSqlInjector {
+
+    private final int fetchSize;
+
+    /**
+     * @param fetchSize 游标查询的 fetchSize，见 {@link SelectCursor}
+     */
+    public StreamingSqlInjector(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public List<AbstractMethod> getMethodList(Class<?> mapperClass, TableInfo tableInfo) {
+        List<AbstractMethod> methods = super.getMethodList(mapperClass, tableInfo);
+        if (StreamingMapper.class.isAssignableFrom(mapperClass)) {
+            methods.add(new SelectCursor(fetchSize));
+        }
+        return methods;
+    }
+}
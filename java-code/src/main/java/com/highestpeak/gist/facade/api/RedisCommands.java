@@ -3,6 +3,7 @@ package com.highestpeak.gist.facade.api;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * @author highestpeak <highestpeak@163.com> <br/>
@@ -139,6 +140,11 @@ public interface RedisCommands {
 
     Long zadd(String key, Map<String, Double> scoreMembers);
 
+    /**
+     * @param option NX / XX / GT / LT，LT 表示 member 不存在时新增、存在时只在新 score 更小时更新（redis 6.2+）
+     */
+    Long zadd(String key, Map<String, Double> scoreMembers, String option);
+
     Set<String> zrange(String key, long start, long end);
 
     Long zrem(String key, String... member);
@@ -243,4 +249,9 @@ public interface RedisCommands {
      * Executes BITFIELD Redis command
      */
     List<Long> bitfield(String key, String...arguments);
+
+    /**
+     * 管道：commands 中的命令一次往返发送，按顺序执行但整体不是原子的，管道内命令的返回值不可用
+     */
+    void pipelined(Consumer<RedisCommands> commands);
 }
@@ -0,0 +1,134 @@
+package com.highestpeak.gist.benchmark.concurrent.util;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.highestpeak.gist.concurrent.util.AdaptiveThreadPoolSizer;
+import com.highestpeak.gist.concurrent.util.ExecutorsEx;
+import com.highestpeak.gist.concurrent.util.InstrumentedThreadPoolExecutor;
+
+/**
+ * {@link AdaptiveThreadPoolSizer} 的模拟：按几个阶段的到达率和任务耗时压一个线程池，对比固定 10 个线程和自适应调整的排队时间
+ * <p>
+ * 任务用 sleep 模拟下游 IO，所以单核机器上也能跑出上百的并发。控制器不启动内部的采样线程，
+ * 由压测线程每 {@link #ADJUST_INTERVAL_MILLIS} 毫秒手动调用一次 {@link AdaptiveThreadPoolSizer#adjust}，调整的节奏固定。
+ * 每个阶段结束时输出一行：平均线程数、平均排队时间、排队时间最高的一个调整周期内的平均排队时间、拒绝数
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+public class AdaptiveThreadPoolSizerSimulation {
+
+    private static final long ADJUST_INTERVAL_MILLIS = 250;
+    private static final int QUEUE_CAPACITY = 10000;
+    /**
+     * 对应 ExecutorWrapRunnable.main 中写死的 coreSize
+     */
+    private static final int FIXED_POOL_SIZE = 10;
+
+    private static final Phase[] PHASES = {
+            new Phase("steady", 200, 20, 4), // 需要约 4 个线程
+            new Phase("burst", 1000, 20, 4), // 需要约 20 个线程
+            new Phase("slow-downstream", 1000, 50, 4), // 需要约 50 个线程
+            new Phase("idle", 50, 20, 4), // 需要约 1 个线程
+    };
+
+    public static void main(String[] args) {
+        simulate("fixed-" + FIXED_POOL_SIZE, false);
+        simulate("adaptive", true);
+    }
+
+    private static void simulate(String name, boolean adaptive) {
+        InstrumentedThreadPoolExecutor executor = ExecutorsEx.newInstrumentedThreadPool(FIXED_POOL_SIZE, FIXED_POOL_SIZE, QUEUE_CAPACITY,
+                "simulation-" + name);
+        AdaptiveThreadPoolSizer sizer = !adaptive ? null : AdaptiveThreadPoolSizer.newBuilder(executor)
+                .minPoolSize(1)
+                .maxPoolSize(200)
+                .targetQueueWait(Duration.ofMillis(20))
+                .scaleUpCooldown(Duration.ofMillis(ADJUST_INTERVAL_MILLIS))
+                .scaleDownCooldown(Duration.ofSeconds(1))
+                .build();
+        System.out.printf("%n%s%n%-16s %8s %10s %14s %13s %9s%n", name, "phase", "rate/s", "avgThreads", "avgQueueWaitMs",
+                "peakQueueWaitMs", "rejected");
+        try {
+            for (Phase phase : PHASES) {
+                runPhase(executor, sizer, phase);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void runPhase(InstrumentedThreadPoolExecutor executor, AdaptiveThreadPoolSizer sizer, Phase phase) {
+        long rejectedBefore = executor.getRejected().sum();
+        long phaseWaitCount = executor.getQueueWaitNanos().getCount();
+        long phaseWaitSum = executor.getQueueWaitNanos().getSum();
+        long lastWaitCount = phaseWaitCount;
+        long lastWaitSum = phaseWaitSum;
+        double peakQueueWaitNanos = 0;
+
+        Runnable task = () -> LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(phase.taskMillis));
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + TimeUnit.SECONDS.toNanos(phase.seconds);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / phase.ratePerSecond;
+        long adjustIntervalNanos = TimeUnit.MILLISECONDS.toNanos(ADJUST_INTERVAL_MILLIS);
+        long nextSubmitNanos = startNanos;
+        long nextAdjustNanos = startNanos + adjustIntervalNanos;
+        long poolSizeSum = 0;
+        int poolSizeSamples = 0;
+        while (true) {
+            long now = System.nanoTime();
+            if (now >= endNanos) {
+                break;
+            }
+            // 按计划的时间点补齐应该提交的任务，到达率不受提交线程调度抖动影响
+            while (nextSubmitNanos <= now) {
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    // 已经计入 executor 的拒绝数
+                }
+                nextSubmitNanos += intervalNanos;
+            }
+            if (now >= nextAdjustNanos) {
+                if (sizer != null) {
+                    sizer.adjust(now);
+                }
+                poolSizeSum += executor.getCorePoolSize();
+                poolSizeSamples++;
+                // 直方图是累计的，用两次读数的差得到这个周期的平均排队时间
+                long waitCount = executor.getQueueWaitNanos().getCount();
+                long waitSum = executor.getQueueWaitNanos().getSum();
+                if (waitCount > lastWaitCount) {
+                    peakQueueWaitNanos = Math.max(peakQueueWaitNanos, (double) (waitSum - lastWaitSum) / (waitCount - lastWaitCount));
+                }
+                lastWaitCount = waitCount;
+                lastWaitSum = waitSum;
+                nextAdjustNanos += adjustIntervalNanos;
+            }
+            LockSupport.parkNanos(Math.min(nextSubmitNanos, nextAdjustNanos) - now);
+        }
+
+        long waitCount = executor.getQueueWaitNanos().getCount() - phaseWaitCount;
+        long waitSum = executor.getQueueWaitNanos().getSum() - phaseWaitSum;
+        System.out.printf("%-16s %8d %10.1f %14.2f %13.2f %9d%n", phase.name, phase.ratePerSecond,
+                poolSizeSamples > 0 ? (double) poolSizeSum / poolSizeSamples : executor.getCorePoolSize(),
+                waitCount > 0 ? waitSum / 1e6 / waitCount : 0, peakQueueWaitNanos / 1e6, executor.getRejected().sum() - rejectedBefore);
+    }
+
+    private static final class Phase {
+        private final String name;
+        private final int ratePerSecond;
+        private final long taskMillis;
+        private final long seconds;
+
+        private Phase(String name, int ratePerSecond, long taskMillis, long seconds) {
+            this.name = name;
+            this.ratePerSecond = ratePerSecond;
+            this.taskMillis = taskMillis;
+            this.seconds = seconds;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.highestpeak.gist.benchmark.concurrent.util;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.highestpeak.gist.concurrent.util.BlockingDelayBufferTrigger;
+import com.highestpeak.gist.concurrent.util.BlockingDelayBufferTrigger.AddStatus;
+import com.highestpeak.gist.concurrent.util.BlockingDelayBufferTrigger.SchedulerType;
+
+/**
+ * 已存在的 key 再次 add（merge）时的分配量，配合 -prof gc 查看 gc.alloc.rate.norm，预期为 0 B/op
+ * <p>
+ * key 和 val 都是预先创建好的对象，不开启持久化日志、指标和上下文传递，测的是 trigger 自身在 merge 路径上的分配。
+ * main 方法带上 {@link GCProfiler} 运行，任何一组结果超过 {@link #MAX_BYTES_PER_OP} 时失败
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MergeAllocationBenchmark {
+
+    private static final int KEY_COUNT = 1024;
+    /**
+     * gc.alloc.rate.norm 是采样得到的，有零点几字节的噪声
+     */
+    private static final double MAX_BYTES_PER_OP = 0.5;
+
+    @Param({"PRIORITY_QUEUE", "TIMING_WHEEL"})
+    private SchedulerType schedulerType;
+
+    private BlockingDelayBufferTrigger<Integer, Integer> trigger;
+    private Integer[] keys;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        trigger = BlockingDelayBufferTrigger.<Integer, Integer> newBuilder()
+                .capacity(KEY_COUNT * 2)
+                .schedulerType(schedulerType)
+                .upToTimeConsumer((key, val) -> { })
+                .dupValConsumer((oldVal, newVal) -> newVal)
+                .build();
+        keys = new Integer[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = i;
+            trigger.add(keys[i], keys[i], 1, TimeUnit.HOURS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        trigger.shutdown();
+    }
+
+    @Benchmark
+    public AddStatus merge() {
+        Integer key = keys[next++ & (KEY_COUNT - 1)];
+        return trigger.add(key, key, 1, TimeUnit.HOURS);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Collection<RunResult> results = new Runner(new OptionsBuilder()
+                .include(MergeAllocationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+        for (RunResult result : results) {
+            Result<?> allocation = result.getSecondaryResults().get("gc.alloc.rate.norm");
+            if (allocation == null || allocation.getScore() > MAX_BYTES_PER_OP) {
+                throw new IllegalStateException("merge path allocates. params: " + result.getParams()
+                        + ", gc.alloc.rate.norm: " + (allocation == null ? "missing" : allocation.getScore() + " B/op"));
+            }
+        }
+    }
+}
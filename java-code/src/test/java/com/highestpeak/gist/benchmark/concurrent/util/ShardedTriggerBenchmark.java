@@ -0,0 +1,98 @@
+package com.highestpeak.gist.benchmark.concurrent.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.highestpeak.gist.concurrent.util.BlockingDelayBufferTrigger;
+import com.highestpeak.gist.concurrent.util.BlockingDelayBufferTrigger.AddStatus;
+
+/**
+ * 单锁（shardCount = 1）和分片模式下 add 的吞吐，生产者线程数 1、8、32
+ * <p>
+ * key 空间固定，延迟足够长，预热后绝大多数 add 都是 merge，测的是锁竞争而不是容量或者分发
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShardedTriggerBenchmark {
+
+    private static final int KEY_SPACE = 1 << 16;
+
+    @Param({"1", "16"})
+    private int shardCount;
+
+    private BlockingDelayBufferTrigger<Integer, Integer> trigger;
+    private Integer[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        trigger = BlockingDelayBufferTrigger.<Integer, Integer> newBuilder()
+                .capacity(KEY_SPACE * 2)
+                .shardCount(shardCount)
+                .upToTimeConsumer((key, val) -> { })
+                .dupValConsumer((oldVal, newVal) -> newVal)
+                .build();
+        keys = new Integer[KEY_SPACE];
+        for (int i = 0; i < KEY_SPACE; i++) {
+            keys[i] = i;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        trigger.shutdown();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public AddStatus producers01() {
+        return add();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public AddStatus producers08() {
+        return add();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public AddStatus producers32() {
+        return add();
+    }
+
+    private AddStatus add() {
+        Integer key = keys[ThreadLocalRandom.current().nextInt(KEY_SPACE)];
+        return trigger.add(key, key, 1, TimeUnit.MINUTES);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ShardedTriggerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
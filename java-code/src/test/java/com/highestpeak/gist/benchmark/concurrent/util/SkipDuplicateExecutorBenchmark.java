@@ -0,0 +1,111 @@
+package com.highestpeak.gist.benchmark.concurrent.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.highestpeak.gist.concurrent.util.SkipDuplicateExecutor;
+
+/**
+ * 大量重复 key 的提交：{@link SkipDuplicateExecutor} 和普通的 {@link ThreadPoolExecutor}
+ * <p>
+ * 每次调用提交 {@link #SUBMISSIONS} 个任务，轮流落在 keyCount 个 key 上，等全部执行完。
+ * 普通线程池每次提交都执行一次（同一个 key 还会并行执行），SkipDuplicateExecutor 把执行期间的提交合并成一次 rerun，
+ * key 越少重复越多，handler 实际执行的次数越少
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SkipDuplicateExecutorBenchmark {
+
+    private static final int SUBMISSIONS = 4096;
+    private static final int PARALLELISM = 4;
+    /**
+     * 单次 handler 的 CPU 消耗，大约几微秒
+     */
+    private static final long HANDLER_TOKENS = 1000;
+
+    @Param({"16", "256"})
+    private int keyCount;
+
+    private Integer[] keys;
+    private ExecutorService pool;
+    private SkipDuplicateExecutor<Integer, Integer> skipDuplicateExecutor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = new Integer[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = i;
+        }
+        pool = new ThreadPoolExecutor(PARALLELISM, PARALLELISM, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        skipDuplicateExecutor = SkipDuplicateExecutor.newExecutor(PARALLELISM, "skip-duplicate-benchmark", (key, val) -> handle());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+        skipDuplicateExecutor.close();
+    }
+
+    @Benchmark
+    public void threadPoolExecutor() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(SUBMISSIONS);
+        for (int i = 0; i < SUBMISSIONS; i++) {
+            pool.execute(() -> {
+                handle();
+                done.countDown();
+            });
+        }
+        done.await();
+    }
+
+    @Benchmark
+    public void skipDuplicateExecutor() {
+        // 同一个 key 后提交的 future 完成时，之前的提交一定已经执行完
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Void>[] lastFutures = new CompletableFuture[keyCount];
+        for (int i = 0; i < SUBMISSIONS; i++) {
+            int keyIndex = i % keyCount;
+            lastFutures[keyIndex] = skipDuplicateExecutor.submit(keys[keyIndex], i);
+        }
+        CompletableFuture.allOf(lastFutures).join();
+    }
+
+    private static void handle() {
+        Blackhole.consumeCPU(HANDLER_TOKENS);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SkipDuplicateExecutorBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
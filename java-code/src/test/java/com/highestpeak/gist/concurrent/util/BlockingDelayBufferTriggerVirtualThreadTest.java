@@ -0,0 +1,139 @@
+package com.highestpeak.gist.concurrent.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.highestpeak.gist.concurrent.util.BlockingDelayBufferTrigger.ExecutionMode;
+
+/**
+ * {@link BlockingDelayBufferTrigger} 虚拟线程模式的单元测试，需要 Java 21+ 运行，低版本运行时跳过
+ * <p>
+ * 用到包内可见的 {@link VirtualThreads} 判断运行时是否支持，所以放在同一个包中
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+class BlockingDelayBufferTriggerVirtualThreadTest {
+
+    private static final int EXECUTOR_COUNT = 2;
+
+    private BlockingDelayBufferTrigger<Integer, Integer> trigger;
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(VirtualThreads.isSupported(), "virtual thread requires java 21+");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (trigger != null) {
+            trigger.shutdown();
+        }
+    }
+
+    @Test
+    void sameKeyRunsInOrderWithoutOverlap() throws Exception {
+        int writes = 200;
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        List<Integer> consumed = new CopyOnWriteArrayList<>();
+        trigger = BlockingDelayBufferTrigger.<Integer, Integer> newBuilder()
+                .capacity(1000)
+                .executorCount(EXECUTOR_COUNT)
+                .executionMode(ExecutionMode.VIRTUAL_THREAD)
+                .dupValConsumer((oldVal, newVal) -> newVal)
+                .upToTimeConsumer((key, val) -> {
+                    if (running.incrementAndGet() != 1) {
+                        overlaps.incrementAndGet();
+                    }
+                    sleep(5);
+                    consumed.add(val);
+                    running.decrementAndGet();
+                })
+                .build();
+        for (int i = 1; i <= writes; i++) {
+            trigger.add(1, i, 0, TimeUnit.MILLISECONDS);
+            if (i % 10 == 0) {
+                sleep(2);
+            }
+        }
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while ((consumed.isEmpty() || consumed.get(consumed.size() - 1) != writes) && System.currentTimeMillis() < deadline) {
+            sleep(10);
+        }
+
+        assertEquals(0, overlaps.get());
+        assertEquals(writes, consumed.get(consumed.size() - 1).intValue());
+        // 执行期间的写入合并成一次 rerun，值只会越来越新
+        for (int i = 1; i < consumed.size(); i++) {
+            assertTrue(consumed.get(i) > consumed.get(i - 1), consumed.toString());
+        }
+    }
+
+    @Test
+    void autoModeRunsMoreKeysConcurrentlyThanExecutorCount() throws Exception {
+        int keys = EXECUTOR_COUNT * 10;
+        CountDownLatch allStarted = new CountDownLatch(keys);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger platformThreads = new AtomicInteger();
+        // 不指定 executionMode，默认 AUTO 在支持虚拟线程的运行时上使用虚拟线程
+        trigger = BlockingDelayBufferTrigger.<Integer, Integer> newBuilder()
+                .capacity(1000)
+                .executorCount(EXECUTOR_COUNT)
+                .dupValConsumer((oldVal, newVal) -> newVal)
+                .upToTimeConsumer((key, val) -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    if (!isVirtual(Thread.currentThread())) {
+                        platformThreads.incrementAndGet();
+                    }
+                    allStarted.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                })
+                .build();
+        try {
+            for (int key = 0; key < keys; key++) {
+                trigger.add(key, key, 0, TimeUnit.MILLISECONDS);
+            }
+            // 每个消费都阻塞到所有 key 都开始执行，并发被限制在 executorCount 时这里会超时
+            assertTrue(allStarted.await(10, TimeUnit.SECONDS), "only " + maxRunning.get() + " keys ran concurrently");
+            assertEquals(keys, maxRunning.get());
+            assertEquals(0, platformThreads.get());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
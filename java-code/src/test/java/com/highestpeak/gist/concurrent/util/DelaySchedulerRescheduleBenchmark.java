@@ -0,0 +1,92 @@
+package com.highestpeak.gist.concurrent.util;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 调整一个已在队列中的 key 的执行时间：{@link IndexedHeapDelayScheduler#reschedule}（O(log n)）
+ * 和原来 {@link PriorityQueue} 的 remove + 重新插入（remove 需要线性查找，O(n)）
+ * <p>
+ * 队列中分别有 1 万、10 万、100 万个 key，每次随机挑一个 key 改成随机的执行时间，队列大小保持不变。
+ * 调度后端和 {@link DelayWrapper} 都是包内可见的，基准测试放在同一个包中
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DelaySchedulerRescheduleBenchmark {
+
+    private static final long EXEC_TS_RANGE = TimeUnit.MINUTES.toMillis(10);
+
+    @Param({"10000", "100000", "1000000"})
+    private int pendingKeys;
+
+    private final SplittableRandom random = new SplittableRandom(42);
+    private DelayWrapper<Integer, Integer>[] heapWrappers;
+    private DelayWrapper<Integer, Integer>[] queueWrappers;
+    private IndexedHeapDelayScheduler<Integer, Integer> heap;
+    private PriorityQueue<DelayWrapper<Integer, Integer>> queue;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        heap = new IndexedHeapDelayScheduler<>();
+        queue = new PriorityQueue<>(pendingKeys, Comparator.comparingLong(DelayWrapper::getExecTs));
+        heapWrappers = new DelayWrapper[pendingKeys];
+        queueWrappers = new DelayWrapper[pendingKeys];
+        for (int i = 0; i < pendingKeys; i++) {
+            long execTs = nextExecTs();
+            heapWrappers[i] = new DelayWrapper<>(execTs, i, i);
+            queueWrappers[i] = new DelayWrapper<>(execTs, i, i);
+            heap.offer(heapWrappers[i]);
+            queue.add(queueWrappers[i]);
+        }
+    }
+
+    @Benchmark
+    public boolean indexedHeap() {
+        DelayWrapper<Integer, Integer> wrapper = heapWrappers[random.nextInt(pendingKeys)];
+        return heap.reschedule(wrapper, nextExecTs());
+    }
+
+    @Benchmark
+    public boolean priorityQueue() {
+        DelayWrapper<Integer, Integer> wrapper = queueWrappers[random.nextInt(pendingKeys)];
+        queue.remove(wrapper);
+        wrapper.setExecTs(nextExecTs());
+        return queue.add(wrapper);
+    }
+
+    private long nextExecTs() {
+        return random.nextLong(EXEC_TS_RANGE);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DelaySchedulerRescheduleBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,194 @@
+package com.highestpeak.gist.concurrent.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * {@link HashedWheelDelayScheduler} 的单元测试
+ * <p>
+ * tick 为 1ms，测试开始时先把时间轮推进到一个 64 对齐的时间点 start，之后所有时间都相对 start 计算，
+ * 这样元素落在哪一层、什么时候 cascade 都是确定的。调度后端和 {@link DelayWrapper} 都是包内可见的，测试放在同一个包中
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+class HashedWheelDelaySchedulerTest {
+
+    private static final int WHEEL_SIZE = 64;
+
+    private HashedWheelDelayScheduler<Integer, String> scheduler;
+    private long start;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new HashedWheelDelayScheduler<>(1);
+        start = (System.currentTimeMillis() / WHEEL_SIZE + 2) * WHEEL_SIZE;
+        // 空的时间轮直接跳到目标 tick
+        assertNull(scheduler.pollDue(start));
+    }
+
+    @Test
+    void cascadeDispatchesEveryLevelExactlyAtExecTs() {
+        // 覆盖第 0 ~ 3 层：64、64^2、64^3 个 tick 分别是各层的边界
+        long[] delays = {1, 63, 64, 65, 4095, 4096, 4097, 64 * 64 * 3 + 7, 262143, 262144, 262145, 300000};
+        Map<Integer, Long> execTsByKey = new HashMap<>();
+        for (int i = 0; i < delays.length; i++) {
+            execTsByKey.put(i, start + delays[i]);
+        }
+        Random random = new Random(42);
+        for (int i = delays.length; i < 2000; i++) {
+            execTsByKey.put(i, start + 1 + random.nextInt(300000));
+        }
+        execTsByKey.forEach((key, execTs) -> scheduler.offer(wrapper(key, execTs)));
+        assertEquals(execTsByKey.size(), scheduler.size());
+
+        long end = start + 300000;
+        int dispatched = 0;
+        for (long now = start; now <= end; now++) {
+            DelayWrapper<Integer, String> wrapper;
+            while ((wrapper = scheduler.pollDue(now)) != null) {
+                // tick 为 1ms 时既不会早于 execTs，也不会晚于 execTs
+                assertEquals((long) execTsByKey.get(wrapper.getKey()), now, "key " + wrapper.getKey());
+                dispatched++;
+            }
+        }
+        assertEquals(execTsByKey.size(), dispatched);
+        assertEquals(0, scheduler.size());
+        assertEquals(Long.MAX_VALUE, scheduler.nextWakeupTs(end));
+    }
+
+    @Test
+    void nextWakeupTsStopsAtLevelZeroBoundaryForCascade() {
+        scheduler.offer(wrapper(1, start + 200));
+        // 第 0 层为空，需要在第 0 层转完一圈时醒来做 cascade
+        assertEquals(start + WHEEL_SIZE, scheduler.nextWakeupTs(start));
+        assertNull(scheduler.pollDue(start + WHEEL_SIZE * 3));
+        // cascade 到第 0 层后可以精确地给出到期时间
+        assertEquals(start + 200, scheduler.nextWakeupTs(start + WHEEL_SIZE * 3));
+    }
+
+    @Test
+    void removeAndRescheduleInsideBucket() {
+        // 三个元素在第 1 层的同一个槽位里：[start + 128, start + 192)
+        DelayWrapper<Integer, String> head = wrapper(1, start + 130);
+        DelayWrapper<Integer, String> middle = wrapper(2, start + 140);
+        DelayWrapper<Integer, String> tail = wrapper(3, start + 150);
+        scheduler.offer(head);
+        scheduler.offer(middle);
+        scheduler.offer(tail);
+
+        scheduler.remove(middle);
+        // 重复删除是空操作
+        scheduler.remove(middle);
+        assertEquals(2, scheduler.size());
+
+        // head 提前到第 0 层，tail 推迟到第 2 层
+        assertTrue(scheduler.reschedule(head, start + 10));
+        scheduler.reschedule(tail, start + 5000);
+        assertEquals(2, scheduler.size());
+
+        assertEquals(keys(), collectDue(start + 9));
+        assertEquals(keys(1), collectDue(start + 10));
+        assertEquals(keys(), collectDue(start + 4999));
+        assertEquals(keys(3), collectDue(start + 5000));
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    void removeFromReadyList() {
+        DelayWrapper<Integer, String> first = wrapper(1, start + 5);
+        DelayWrapper<Integer, String> second = wrapper(2, start + 5);
+        scheduler.offer(first);
+        scheduler.offer(second);
+
+        // 两个都到期进入 ready，按放入顺序取走第一个后另一个还在 ready 中
+        assertSame(first, scheduler.pollDue(start + 5));
+        assertEquals(1, scheduler.size());
+        scheduler.remove(second);
+        assertEquals(0, scheduler.size());
+        assertNull(scheduler.pollDue(start + 5));
+        assertNull(scheduler.pollFirst());
+    }
+
+    @Test
+    void pollFirstIsExactWithinLevelZero() {
+        scheduler.offer(wrapper(1, start + 40));
+        scheduler.offer(wrapper(2, start + 3));
+        scheduler.offer(wrapper(3, start + 20));
+        // 放在第 1 层槽位里的多个元素之间取最早的
+        scheduler.offer(wrapper(4, start + 90));
+        scheduler.offer(wrapper(5, start + 70));
+        assertEquals(keys(2, 3, 1, 5, 4), pollFirstAll());
+    }
+
+    @Test
+    void pollFirstPrefersReadyElements() {
+        scheduler.offer(wrapper(1, start + 1));
+        scheduler.offer(wrapper(2, start + 1));
+        scheduler.offer(wrapper(3, start + 30));
+        // 第一个到期元素被取走，另一个留在 ready 中，先于时间轮中的元素返回
+        assertEquals(1, (int) scheduler.pollDue(start + 1).getKey());
+        assertEquals(keys(2, 3), pollFirstAll());
+    }
+
+    @Test
+    void pollFirstIsApproximateAcrossLevels() {
+        // earliest 落在第 1 层，在 start + 64 之前不会 cascade
+        DelayWrapper<Integer, String> earliest = wrapper(1, start + 100);
+        scheduler.offer(earliest);
+        assertNull(scheduler.pollDue(start + 50));
+        // later 在 start + 50 时放入，距离到期不足 64 个 tick，落在第 0 层
+        DelayWrapper<Integer, String> later = wrapper(2, start + 110);
+        scheduler.offer(later);
+
+        // 先扫描低层，返回的不是真正最早的元素，但误差小于第 0 层一圈的跨度
+        DelayWrapper<Integer, String> first = scheduler.pollFirst();
+        assertSame(later, first);
+        assertTrue(first.getExecTs() - earliest.getExecTs() < WHEEL_SIZE);
+        assertSame(earliest, scheduler.pollFirst());
+        assertNull(scheduler.pollFirst());
+        assertEquals(0, scheduler.size());
+    }
+
+    private List<Integer> pollFirstAll() {
+        List<Integer> result = new ArrayList<>();
+        DelayWrapper<Integer, String> wrapper;
+        while ((wrapper = scheduler.pollFirst()) != null) {
+            result.add(wrapper.getKey());
+        }
+        assertEquals(0, scheduler.size());
+        return result;
+    }
+
+    private List<Integer> collectDue(long now) {
+        List<Integer> result = new ArrayList<>();
+        DelayWrapper<Integer, String> wrapper;
+        while ((wrapper = scheduler.pollDue(now)) != null) {
+            result.add(wrapper.getKey());
+        }
+        return result;
+    }
+
+    private static List<Integer> keys(Integer... keys) {
+        List<Integer> result = new ArrayList<>();
+        for (Integer key : keys) {
+            result.add(key);
+        }
+        return result;
+    }
+
+    private static DelayWrapper<Integer, String> wrapper(int key, long execTs) {
+        return new DelayWrapper<>(execTs, key, "v" + key);
+    }
+}
@@ -0,0 +1,54 @@
+package com.highestpeak.gist.concurrent.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * {@link BlockingDelayBufferTrigger#splitByWeight} 的单元测试：各优先级类别的线程数加起来等于 executorCount
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+class LaneThreadSplitTest {
+
+    @Test
+    void equalWeightsSumToCount() {
+        // 逐个四舍五入时是 2 + 2 + 2 = 6
+        assertArrayEquals(new int[] {2, 2, 1}, BlockingDelayBufferTrigger.splitByWeight(5, new int[] {1, 1, 1}));
+    }
+
+    @Test
+    void largestRemainderGetsTheExtraThread() {
+        // 10 * 5/8 = 6.25, 10 * 2/8 = 2.5, 10 * 1/8 = 1.25
+        assertArrayEquals(new int[] {6, 3, 1}, BlockingDelayBufferTrigger.splitByWeight(10, new int[] {5, 2, 1}));
+    }
+
+    @Test
+    void everyLaneGetsAtLeastOneThread() {
+        // 10 * 1/100 向下取整为 0，从最大的一份借 1 个
+        assertArrayEquals(new int[] {9, 1}, BlockingDelayBufferTrigger.splitByWeight(10, new int[] {99, 1}));
+        assertArrayEquals(new int[] {1, 1, 1}, BlockingDelayBufferTrigger.splitByWeight(2, new int[] {3, 2, 1}));
+    }
+
+    @Test
+    void randomWeightsAlwaysSumToCount() {
+        Random random = new Random(42);
+        for (int round = 0; round < 1000; round++) {
+            int lanes = 1 + random.nextInt(6);
+            int count = lanes + random.nextInt(64);
+            int[] weights = new int[lanes];
+            for (int i = 0; i < lanes; i++) {
+                weights[i] = 1 + random.nextInt(100);
+            }
+            int[] parts = BlockingDelayBufferTrigger.splitByWeight(count, weights);
+            assertEquals(count, Arrays.stream(parts).sum(), Arrays.toString(weights));
+            assertTrue(Arrays.stream(parts).allMatch(part -> part >= 1), Arrays.toString(parts));
+        }
+    }
+}
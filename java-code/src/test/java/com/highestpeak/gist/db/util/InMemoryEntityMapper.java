@@ -0,0 +1,241 @@
+package com.highestpeak.gist.db.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.conditions.AbstractWrapper;
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+
+/**
+ * 内存中的 {@link BaseMapper}，用于测试按 id 游标分页的扫描
+ * <p>
+ * 只实现 selectList，并且只认识游标分页用到的条件：id 的比较、ORDER BY id、limit，其他条件直接抛出异常，
+ * 避免测试在不知情的情况下忽略了条件。每次查询记录 id 的下界，可以指定某个下界的查询失败一次。
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+public class InMemoryEntityMapper implements BaseMapper<InMemoryEntityMapper.Row> {
+
+    private static final Pattern ID_CONDITION = Pattern.compile("^id (>|>=|<|<=) #\\{ew\\.paramNameValuePairs\\.(\\w+)}$");
+    private static final Pattern ORDER_BY = Pattern.compile("ORDER BY id (ASC|DESC)");
+    private static final Pattern LIMIT = Pattern.compile("limit (\\d+)\\s*$");
+
+    static {
+        // lambda 条件按实体的字段解析列名，需要先初始化表信息
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), Row.class);
+    }
+
+    private final NavigableMap<Long, Row> rows = new TreeMap<>();
+    private final List<Long> lowerBounds = new ArrayList<>();
+    private Long failOnceAt;
+
+    public InMemoryEntityMapper(long fromId, long toId) {
+        for (long id = fromId; id <= toId; id++) {
+            rows.put(id, new Row(id));
+        }
+    }
+
+    public synchronized void add(long id) {
+        rows.put(id, new Row(id));
+    }
+
+    public synchronized void removeAll() {
+        rows.clear();
+    }
+
+    /**
+     * 下一次 id 下界为 lowerBound 的查询抛出异常
+     */
+    public synchronized void failOnceAt(long lowerBound) {
+        failOnceAt = lowerBound;
+    }
+
+    /**
+     * @return 按调用顺序排列的每次查询的 id 下界（不包含），没有下界时为 Long.MIN_VALUE
+     */
+    public synchronized List<Long> lowerBounds() {
+        return new ArrayList<>(lowerBounds);
+    }
+
+    @Override
+    public synchronized List<Row> selectList(Wrapper<Row> queryWrapper) {
+        AbstractWrapper<?, ?, ?> wrapper = (AbstractWrapper<?, ?, ?>) queryWrapper;
+        String sql = wrapper.getSqlSegment();
+        Map<String, Object> params = wrapper.getParamNameValuePairs();
+
+        long lower = Long.MIN_VALUE;
+        long upper = Long.MAX_VALUE;
+        int where = sql.indexOf(')');
+        if (sql.startsWith("(") && where > 0) {
+            for (String condition : sql.substring(1, where).split(" AND ")) {
+                Matcher matcher = ID_CONDITION.matcher(condition.trim());
+                if (!matcher.matches()) {
+                    throw new UnsupportedOperationException("condition not supported by InMemoryEntityMapper: " + condition);
+                }
+                long value = ((Number) params.get(matcher.group(2))).longValue();
+                switch (matcher.group(1)) {
+                    case ">":
+                        lower = Math.max(lower, value);
+                        break;
+                    case ">=":
+                        lower = Math.max(lower, value - 1);
+                        break;
+                    case "<":
+                        upper = Math.min(upper, value - 1);
+                        break;
+                    default:
+                        upper = Math.min(upper, value);
+                        break;
+                }
+            }
+        }
+        lowerBounds.add(lower);
+        if (failOnceAt != null && failOnceAt == lower) {
+            failOnceAt = null;
+            throw new IllegalStateException("query failed. id > " + lower);
+        }
+
+        List<Row> result = new ArrayList<>();
+        if (lower >= upper) {
+            return result;
+        }
+        Matcher order = ORDER_BY.matcher(sql);
+        boolean desc = order.find() && "DESC".equals(order.group(1));
+        Matcher limitMatcher = LIMIT.matcher(sql);
+        int limit = limitMatcher.find() ? Integer.parseInt(limitMatcher.group(1)) : Integer.MAX_VALUE;
+        NavigableMap<Long, Row> matched = rows.subMap(lower, false, upper, true);
+        for (Row row : desc ? matched.descendingMap().values() : matched.values()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(row);
+        }
+        return result;
+    }
+
+    @Override
+    public int insert(Row entity) {
+        throw unsupported();
+    }
+
+    @Override
+    public int deleteById(Serializable id) {
+        throw unsupported();
+    }
+
+    @Override
+    public int deleteById(Row entity) {
+        throw unsupported();
+    }
+
+    @Override
+    public int deleteByMap(Map<String, Object> columnMap) {
+        throw unsupported();
+    }
+
+    @Override
+    public int delete(Wrapper<Row> queryWrapper) {
+        throw unsupported();
+    }
+
+    @Override
+    public int deleteBatchIds(Collection<?> idList) {
+        throw unsupported();
+    }
+
+    @Override
+    public int updateById(Row entity) {
+        throw unsupported();
+    }
+
+    @Override
+    public int update(Row entity, Wrapper<Row> updateWrapper) {
+        throw unsupported();
+    }
+
+    @Override
+    public Row selectById(Serializable id) {
+        throw unsupported();
+    }
+
+    @Override
+    public List<Row> selectBatchIds(Collection<? extends Serializable> idList) {
+        throw unsupported();
+    }
+
+    @Override
+    public List<Row> selectByMap(Map<String, Object> columnMap) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long selectCount(Wrapper<Row> queryWrapper) {
+        throw unsupported();
+    }
+
+    @Override
+    public List<Map<String, Object>> selectMaps(Wrapper<Row> queryWrapper) {
+        throw unsupported();
+    }
+
+    @Override
+    public List<Object> selectObjs(Wrapper<Row> queryWrapper) {
+        throw unsupported();
+    }
+
+    @Override
+    public <P extends IPage<Row>> P selectPage(P page, Wrapper<Row> queryWrapper) {
+        throw unsupported();
+    }
+
+    @Override
+    public <P extends IPage<Map<String, Object>>> P selectMapsPage(P page, Wrapper<Row> queryWrapper) {
+        throw unsupported();
+    }
+
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("not supported by InMemoryEntityMapper");
+    }
+
+    /**
+     * 只有 id 的一行数据
+     */
+    public static class Row implements DBEntity {
+        private Long id;
+
+        public Row() {
+        }
+
+        public Row(long id) {
+            this.id = id;
+        }
+
+        @Override
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        @Override
+        public String toString() {
+            return "Row(" + id + ")";
+        }
+    }
+}
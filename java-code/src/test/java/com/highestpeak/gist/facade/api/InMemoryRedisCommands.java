@@ -0,0 +1,841 @@
+package com.highestpeak.gist.facade.api;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * @author highestpeak <highestpeak@163.com> <br/>
+ * Created on 2026-10-17 <br/>
+ * 进程内的 {@link RedisCommands} 实现，仅用于测试依赖 redis 的组件 <br/>
+ * 只实现了 string（含 NX/XX、EX/PX 过期）、hash、sorted set 的常用命令，其余命令抛出 {@link UnsupportedOperationException} <br/>
+ * 所有命令串行执行，和 redis 一样单个命令是原子的 <br/>
+ */
+@SuppressWarnings({"SpellCheckingInspection", "unused"})
+public class InMemoryRedisCommands implements RedisCommands {
+
+    private static final String OK = "OK";
+
+    private final Map<String, Object> data = new HashMap<>();
+    /**
+     * key -> 过期的时间戳（毫秒），惰性删除
+     */
+    private final Map<String, Long> expireAts = new HashMap<>();
+
+    // ---------------------------------------------------------------- key
+
+    @Override
+    public synchronized String set(String key, String value) {
+        data.put(key, value);
+        expireAts.remove(key);
+        return OK;
+    }
+
+    @Override
+    public synchronized String set(String key, String value, String nxxx, String expx, long time) {
+        String result = set(key, value, nxxx);
+        if (result == null) {
+            return null;
+        }
+        long millis = "EX".equalsIgnoreCase(expx) ? time * 1000 : time;
+        expireAts.put(key, System.currentTimeMillis() + millis);
+        return result;
+    }
+
+    @Override
+    public synchronized String set(String key, String value, String nxxx) {
+        boolean exists = exists(key);
+        if ("NX".equalsIgnoreCase(nxxx) && exists || "XX".equalsIgnoreCase(nxxx) && !exists) {
+            return null;
+        }
+        return set(key, value);
+    }
+
+    @Override
+    public synchronized String get(String key) {
+        return (String) live(key);
+    }
+
+    @Override
+    public synchronized Boolean exists(String key) {
+        return live(key) != null;
+    }
+
+    @Override
+    public synchronized Long persist(String key) {
+        return live(key) != null && expireAts.remove(key) != null ? 1L : 0L;
+    }
+
+    @Override
+    public synchronized String type(String key) {
+        Object value = live(key);
+        if (value == null) {
+            return "none";
+        }
+        if (value instanceof String) {
+            return "string";
+        }
+        return value instanceof SortedSetValue ? "zset" : "hash";
+    }
+
+    @Override
+    public synchronized Long expire(String key, int seconds) {
+        return pexpire(key, seconds * 1000L);
+    }
+
+    @Override
+    public synchronized Long pexpire(String key, long milliseconds) {
+        return pexpireAt(key, System.currentTimeMillis() + milliseconds);
+    }
+
+    @Override
+    public synchronized Long expireAt(String key, long unixTime) {
+        return pexpireAt(key, unixTime * 1000);
+    }
+
+    @Override
+    public synchronized Long pexpireAt(String key, long millisecondsTimestamp) {
+        if (live(key) == null) {
+            return 0L;
+        }
+        expireAts.put(key, millisecondsTimestamp);
+        return 1L;
+    }
+
+    @Override
+    public synchronized Long ttl(String key) {
+        Long pttl = pttl(key);
+        return pttl < 0 ? pttl : pttl / 1000;
+    }
+
+    @Override
+    public synchronized Long pttl(String key) {
+        if (live(key) == null) {
+            return -2L;
+        }
+        Long expireAt = expireAts.get(key);
+        return expireAt == null ? -1L : Math.max(expireAt - System.currentTimeMillis(), 0);
+    }
+
+    @Override
+    public synchronized Long del(String key) {
+        boolean exists = live(key) != null;
+        data.remove(key);
+        expireAts.remove(key);
+        return exists ? 1L : 0L;
+    }
+
+    // ---------------------------------------------------------------- string
+
+    @Override
+    public synchronized String getSet(String key, String value) {
+        String old = get(key);
+        set(key, value);
+        return old;
+    }
+
+    @Override
+    public synchronized Long setnx(String key, String value) {
+        return set(key, value, "NX") == null ? 0L : 1L;
+    }
+
+    @Override
+    public synchronized String setex(String key, int seconds, String value) {
+        return set(key, value, "", "EX", seconds);
+    }
+
+    @Override
+    public synchronized String psetex(String key, long milliseconds, String value) {
+        return set(key, value, "", "PX", milliseconds);
+    }
+
+    @Override
+    public synchronized Long decrBy(String key, long integer) {
+        return incrBy(key, -integer);
+    }
+
+    @Override
+    public synchronized Long decr(String key) {
+        return incrBy(key, -1);
+    }
+
+    @Override
+    public synchronized Long incrBy(String key, long integer) {
+        String old = get(key);
+        long value = (old == null ? 0 : Long.parseLong(old)) + integer;
+        data.put(key, String.valueOf(value));
+        return value;
+    }
+
+    @Override
+    public synchronized Long incr(String key) {
+        return incrBy(key, 1);
+    }
+
+    @Override
+    public synchronized Long append(String key, String value) {
+        String old = get(key);
+        String appended = old == null ? value : old + value;
+        data.put(key, appended);
+        return (long) appended.length();
+    }
+
+    @Override
+    public synchronized Long strlen(String key) {
+        String value = get(key);
+        return value == null ? 0L : value.length();
+    }
+
+    // ---------------------------------------------------------------- hash
+
+    @Override
+    public synchronized Long hset(String key, String field, String value) {
+        return hash(key, true).put(field, value) == null ? 1L : 0L;
+    }
+
+    @Override
+    public synchronized String hget(String key, String field) {
+        Map<String, String> hash = hash(key, false);
+        return hash == null ? null : hash.get(field);
+    }
+
+    @Override
+    public synchronized Long hsetnx(String key, String field, String value) {
+        return hash(key, true).putIfAbsent(field, value) == null ? 1L : 0L;
+    }
+
+    @Override
+    public synchronized String hmset(String key, Map<String, String> hash) {
+        hash(key, true).putAll(hash);
+        return OK;
+    }
+
+    @Override
+    public synchronized List<String> hmget(String key, String... fields) {
+        Map<String, String> hash = hash(key, false);
+        List<String> values = new ArrayList<>(fields.length);
+        for (String field : fields) {
+            values.add(hash == null ? null : hash.get(field));
+        }
+        return values;
+    }
+
+    @Override
+    public synchronized Long hincrBy(String key, String field, long value) {
+        Map<String, String> hash = hash(key, true);
+        String old = hash.get(field);
+        long result = (old == null ? 0 : Long.parseLong(old)) + value;
+        hash.put(field, String.valueOf(result));
+        return result;
+    }
+
+    @Override
+    public synchronized Boolean hexists(String key, String field) {
+        Map<String, String> hash = hash(key, false);
+        return hash != null && hash.containsKey(field);
+    }
+
+    @Override
+    public synchronized Long hdel(String key, String... field) {
+        Map<String, String> hash = hash(key, false);
+        if (hash == null) {
+            return 0L;
+        }
+        long removed = 0;
+        for (String f : field) {
+            if (hash.remove(f) != null) {
+                removed++;
+            }
+        }
+        if (hash.isEmpty()) {
+            del(key);
+        }
+        return removed;
+    }
+
+    @Override
+    public synchronized Long hlen(String key) {
+        Map<String, String> hash = hash(key, false);
+        return hash == null ? 0L : hash.size();
+    }
+
+    @Override
+    public synchronized Set<String> hkeys(String key) {
+        Map<String, String> hash = hash(key, false);
+        return hash == null ? new LinkedHashSet<>() : new LinkedHashSet<>(hash.keySet());
+    }
+
+    @Override
+    public synchronized List<String> hvals(String key) {
+        Map<String, String> hash = hash(key, false);
+        return hash == null ? new ArrayList<>() : new ArrayList<>(hash.values());
+    }
+
+    @Override
+    public synchronized Map<String, String> hgetAll(String key) {
+        Map<String, String> hash = hash(key, false);
+        return hash == null ? new LinkedHashMap<>() : new LinkedHashMap<>(hash);
+    }
+
+    // ---------------------------------------------------------------- sorted set
+
+    @Override
+    public synchronized Long zadd(String key, double score, String member) {
+        return zset(key, true).put(member, score) ? 1L : 0L;
+    }
+
+    @Override
+    public synchronized Long zadd(String key, Map<String, Double> scoreMembers) {
+        SortedSetValue zset = zset(key, true);
+        long added = 0;
+        for (Map.Entry<String, Double> entry : scoreMembers.entrySet()) {
+            if (zset.put(entry.getKey(), entry.getValue())) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    @Override
+    public synchronized Long zadd(String key, Map<String, Double> scoreMembers, String option) {
+        SortedSetValue zset = zset(key, true);
+        long added = 0;
+        for (Map.Entry<String, Double> entry : scoreMembers.entrySet()) {
+            Double old = zset.scores.get(entry.getKey());
+            double score = entry.getValue();
+            boolean skip;
+            switch (option.toUpperCase()) {
+                case "NX":
+                    skip = old != null;
+                    break;
+                case "XX":
+                    skip = old == null;
+                    break;
+                case "GT":
+                    skip = old != null && score <= old;
+                    break;
+                case "LT":
+                    skip = old != null && score >= old;
+                    break;
+                default:
+                    throw new IllegalArgumentException("ERR syntax error: " + option);
+            }
+            if (!skip && zset.put(entry.getKey(), score)) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    @Override
+    public synchronized Set<String> zrange(String key, long start, long end) {
+        SortedSetValue zset = zset(key, false);
+        Set<String> result = new LinkedHashSet<>();
+        if (zset == null) {
+            return result;
+        }
+        List<String> members = zset.members();
+        int size = members.size();
+        int from = (int) Math.max(start < 0 ? size + start : start, 0);
+        int to = (int) Math.min(end < 0 ? size + end : end, size - 1);
+        for (int i = from; i <= to; i++) {
+            result.add(members.get(i));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Long zrem(String key, String... member) {
+        SortedSetValue zset = zset(key, false);
+        if (zset == null) {
+            return 0L;
+        }
+        long removed = 0;
+        for (String m : member) {
+            if (zset.remove(m)) {
+                removed++;
+            }
+        }
+        if (zset.scores.isEmpty()) {
+            del(key);
+        }
+        return removed;
+    }
+
+    @Override
+    public synchronized Double zincrby(String key, double score, String member) {
+        SortedSetValue zset = zset(key, true);
+        Double old = zset.scores.get(member);
+        double result = (old == null ? 0 : old) + score;
+        zset.put(member, result);
+        return result;
+    }
+
+    @Override
+    public synchronized Long zrank(String key, String member) {
+        SortedSetValue zset = zset(key, false);
+        if (zset == null || !zset.scores.containsKey(member)) {
+            return null;
+        }
+        return (long) zset.members().indexOf(member);
+    }
+
+    @Override
+    public synchronized Long zcard(String key) {
+        SortedSetValue zset = zset(key, false);
+        return zset == null ? 0L : zset.scores.size();
+    }
+
+    @Override
+    public synchronized Double zscore(String key, String member) {
+        SortedSetValue zset = zset(key, false);
+        return zset == null ? null : zset.scores.get(member);
+    }
+
+    @Override
+    public synchronized Long zcount(String key, double min, double max) {
+        return (long) zrangeByScore(key, min, max).size();
+    }
+
+    @Override
+    public synchronized Set<String> zrangeByScore(String key, double min, double max) {
+        return zrangeByScore(key, min, max, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized Set<String> zrangeByScore(String key, double min, double max, int offset, int count) {
+        SortedSetValue zset = zset(key, false);
+        Set<String> result = new LinkedHashSet<>();
+        if (zset == null) {
+            return result;
+        }
+        int skipped = 0;
+        for (String member : zset.ordered) {
+            double score = zset.scores.get(member);
+            if (score < min) {
+                continue;
+            }
+            if (score > max || result.size() >= count) {
+                break;
+            }
+            if (skipped++ < offset) {
+                continue;
+            }
+            result.add(member);
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Long zremrangeByScore(String key, double start, double end) {
+        Set<String> members = zrangeByScore(key, start, end);
+        return members.isEmpty() ? 0L : zrem(key, members.toArray(new String[0]));
+    }
+
+    // ---------------------------------------------------------------- 未实现的命令
+
+    @Override
+    public Boolean setbit(String key, long offset, boolean value) {
+        throw unsupported();
+    }
+
+    @Override
+    public Boolean setbit(String key, long offset, String value) {
+        throw unsupported();
+    }
+
+    @Override
+    public Boolean getbit(String key, long offset) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long setrange(String key, long offset, String value) {
+        throw unsupported();
+    }
+
+    @Override
+    public String getrange(String key, long startOffset, long endOffset) {
+        throw unsupported();
+    }
+
+    @Override
+    public Double incrByFloat(String key, double value) {
+        throw unsupported();
+    }
+
+    @Override
+    public String substr(String key, int start, int end) {
+        throw unsupported();
+    }
+
+    @Override
+    public Double hincrByFloat(String key, String field, double value) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long rpush(String key, String... string) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long lpush(String key, String... string) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long llen(String key) {
+        throw unsupported();
+    }
+
+    @Override
+    public List<String> lrange(String key, long start, long end) {
+        throw unsupported();
+    }
+
+    @Override
+    public String ltrim(String key, long start, long end) {
+        throw unsupported();
+    }
+
+    @Override
+    public String lindex(String key, long index) {
+        throw unsupported();
+    }
+
+    @Override
+    public String lset(String key, long index, String value) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long lrem(String key, long count, String value) {
+        throw unsupported();
+    }
+
+    @Override
+    public String lpop(String key) {
+        throw unsupported();
+    }
+
+    @Override
+    public String rpop(String key) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long sadd(String key, String... member) {
+        throw unsupported();
+    }
+
+    @Override
+    public Set<String> smembers(String key) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long srem(String key, String... member) {
+        throw unsupported();
+    }
+
+    @Override
+    public String spop(String key) {
+        throw unsupported();
+    }
+
+    @Override
+    public Set<String> spop(String key, long count) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long scard(String key) {
+        throw unsupported();
+    }
+
+    @Override
+    public Boolean sismember(String key, String member) {
+        throw unsupported();
+    }
+
+    @Override
+    public String srandmember(String key) {
+        throw unsupported();
+    }
+
+    @Override
+    public List<String> srandmember(String key, int count) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long zrevrank(String key, String member) {
+        throw unsupported();
+    }
+
+    @Override
+    public Set<String> zrevrange(String key, long start, long end) {
+        throw unsupported();
+    }
+
+    @Override
+    public List<String> sort(String key) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long zcount(String key, String min, String max) {
+        throw unsupported();
+    }
+
+    @Override
+    public Set<String> zrangeByScore(String key, String min, String max) {
+        throw unsupported();
+    }
+
+    @Override
+    public Set<String> zrevrangeByScore(String key, double max, double min) {
+        throw unsupported();
+    }
+
+    @Override
+    public Set<String> zrevrangeByScore(String key, String max, String min) {
+        throw unsupported();
+    }
+
+    @Override
+    public Set<String> zrangeByScore(String key, String min, String max, int offset, int count) {
+        throw unsupported();
+    }
+
+    @Override
+    public Set<String> zrevrangeByScore(String key, double max, double min, int offset, int count) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long zremrangeByRank(String key, long start, long end) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long zremrangeByScore(String key, String start, String end) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long zlexcount(String key, String min, String max) {
+        throw unsupported();
+    }
+
+    @Override
+    public Set<String> zrangeByLex(String key, String min, String max) {
+        throw unsupported();
+    }
+
+    @Override
+    public Set<String> zrangeByLex(String key, String min, String max, int offset, int count) {
+        throw unsupported();
+    }
+
+    @Override
+    public Set<String> zrevrangeByLex(String key, String max, String min) {
+        throw unsupported();
+    }
+
+    @Override
+    public Set<String> zrevrangeByLex(String key, String max, String min, int offset, int count) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long zremrangeByLex(String key, String min, String max) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long lpushx(String key, String... string) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long rpushx(String key, String... string) {
+        throw unsupported();
+    }
+
+    @Override
+    @Deprecated
+    public List<String> blpop(String arg) {
+        throw unsupported();
+    }
+
+    @Override
+    public List<String> blpop(int timeout, String key) {
+        throw unsupported();
+    }
+
+    @Override
+    @Deprecated
+    public List<String> brpop(String arg) {
+        throw unsupported();
+    }
+
+    @Override
+    public List<String> brpop(int timeout, String key) {
+        throw unsupported();
+    }
+
+    @Override
+    public String echo(String string) {
+        return string;
+    }
+
+    @Override
+    public Long move(String key, int dbIndex) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long bitcount(String key) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long bitcount(String key, long start, long end) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long bitpos(String key, boolean value) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long pfadd(String key, String... elements) {
+        throw unsupported();
+    }
+
+    @Override
+    public long pfcount(String key) {
+        throw unsupported();
+    }
+
+    @Override
+    public Long geoadd(String key, double longitude, double latitude, String member) {
+        throw unsupported();
+    }
+
+    @Override
+    public Double geodist(String key, String member1, String member2) {
+        throw unsupported();
+    }
+
+    @Override
+    public List<String> geohash(String key, String... members) {
+        throw unsupported();
+    }
+
+    @Override
+    public List<Long> bitfield(String key, String... arguments) {
+        throw unsupported();
+    }
+
+    /**
+     * 内存实现没有网络往返，持有锁顺序执行，管道内的命令之间不会穿插其他线程的命令
+     */
+    @Override
+    public synchronized void pipelined(Consumer<RedisCommands> commands) {
+        commands.accept(this);
+    }
+
+    // ---------------------------------------------------------------- 内部方法
+
+    /**
+     * @return 未过期的值，已过期的 key 顺便删除
+     */
+    private Object live(String key) {
+        Long expireAt = expireAts.get(key);
+        if (expireAt != null && expireAt <= System.currentTimeMillis()) {
+            data.remove(key);
+            expireAts.remove(key);
+            return null;
+        }
+        return data.get(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> hash(String key, boolean create) {
+        Object value = live(key);
+        if (value == null && create) {
+            value = new LinkedHashMap<String, String>();
+            data.put(key, value);
+        }
+        if (value != null && !(value instanceof Map)) {
+            throw wrongType(key);
+        }
+        return (Map<String, String>) value;
+    }
+
+    private SortedSetValue zset(String key, boolean create) {
+        Object value = live(key);
+        if (value == null && create) {
+            value = new SortedSetValue();
+            data.put(key, value);
+        }
+        if (value != null && !(value instanceof SortedSetValue)) {
+            throw wrongType(key);
+        }
+        return (SortedSetValue) value;
+    }
+
+    private static IllegalStateException wrongType(String key) {
+        return new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value: " + key);
+    }
+
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("not supported by InMemoryRedisCommands");
+    }
+
+    /**
+     * 和 redis 一样按 score 排序，score 相同时按 member 字典序
+     */
+    private static class SortedSetValue {
+        private final Map<String, Double> scores = new HashMap<>();
+        private final TreeSet<String> ordered = new TreeSet<>(
+                Comparator.comparingDouble((String member) -> scores.get(member)).thenComparing(Comparator.naturalOrder()));
+
+        /**
+         * @return true 表示新增，false 表示更新了已有 member 的 score
+         */
+        private boolean put(String member, double score) {
+            Double old = scores.get(member);
+            if (old != null) {
+                ordered.remove(member);
+            }
+            scores.put(member, score);
+            ordered.add(member);
+            return old == null;
+        }
+
+        private boolean remove(String member) {
+            if (!scores.containsKey(member)) {
+                return false;
+            }
+            ordered.remove(member);
+            scores.remove(member);
+            return true;
+        }
+
+        private List<String> members() {
+            return new ArrayList<>(ordered);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.highestpeak.gist.unit.concurrent.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.highestpeak.gist.concurrent.util.KeyAffinityExecutor;
+
+/**
+ * {@link KeyAffinityExecutor} 的单元测试：同一个 key FIFO 且不重叠执行、信箱执行完后清理、关闭时执行完已提交的任务
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+class KeyAffinityExecutorTest {
+
+    private static final int KEY_COUNT = 16;
+    private static final int TASKS_PER_KEY = 500;
+
+    private final KeyAffinityExecutor<Integer> executor = KeyAffinityExecutor.newSerializingExecutor(4, 0, "key-affinity-test");
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executor.close();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void tasksOfSameKeyRunInSubmissionOrder() throws Exception {
+        List<List<Integer>> executed = new ArrayList<>();
+        for (int key = 0; key < KEY_COUNT; key++) {
+            executed.add(new ArrayList<>()); // 同一个 key 串行执行，每个 key 的列表只会被一个线程同时访问
+        }
+        CountDownLatch done = new CountDownLatch(KEY_COUNT * TASKS_PER_KEY);
+        // 超过 MAILBOX_BATCH 的任务数，覆盖信箱放回队列后被其他 worker 偷走的情况
+        for (int i = 0; i < TASKS_PER_KEY; i++) {
+            for (int key = 0; key < KEY_COUNT; key++) {
+                int seq = i;
+                List<Integer> keyExecuted = executed.get(key);
+                executor.execute(key, () -> {
+                    keyExecuted.add(seq);
+                    done.countDown();
+                });
+            }
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int key = 0; key < KEY_COUNT; key++) {
+            List<Integer> keyExecuted = executed.get(key);
+            assertEquals(TASKS_PER_KEY, keyExecuted.size());
+            for (int i = 0; i < TASKS_PER_KEY; i++) {
+                assertEquals(i, keyExecuted.get(i).intValue(), "key " + key);
+            }
+        }
+    }
+
+    @Test
+    void tasksOfSameKeyNeverOverlap() throws Exception {
+        AtomicInteger[] running = new AtomicInteger[KEY_COUNT];
+        for (int key = 0; key < KEY_COUNT; key++) {
+            running[key] = new AtomicInteger();
+        }
+        AtomicInteger overlaps = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(KEY_COUNT * 50);
+        // 多个线程同时提交同一组 key
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 5; p++) {
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < 10; i++) {
+                    for (int key = 0; key < KEY_COUNT; key++) {
+                        AtomicInteger keyRunning = running[key];
+                        executor.execute(key, () -> {
+                            if (keyRunning.incrementAndGet() != 1) {
+                                overlaps.incrementAndGet();
+                            }
+                            Thread.yield();
+                            keyRunning.decrementAndGet();
+                            done.countDown();
+                        });
+                    }
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(0, overlaps.get());
+    }
+
+    @Test
+    void mailboxRemovedAfterTasksFinish() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1000);
+        for (int key = 0; key < 1000; key++) {
+            executor.execute(key, () -> {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(executor.mailboxCount() > 0);
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        // 信箱在最后一个任务执行完之后才移除，稍等一下
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (executor.mailboxCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, executor.mailboxCount());
+    }
+
+    @Test
+    void closeDrainsSubmittedTasks() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executed = new AtomicInteger();
+        for (int key = 0; key < KEY_COUNT; key++) {
+            for (int i = 0; i < 100; i++) {
+                executor.execute(key, () -> {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    executed.incrementAndGet();
+                });
+            }
+        }
+        executor.close();
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(0, executed::incrementAndGet));
+        assertTrue(executed.get() < KEY_COUNT * 100);
+
+        release.countDown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(KEY_COUNT * 100, executed.get());
+        assertEquals(0, executor.mailboxCount());
+    }
+}
@@ -0,0 +1,182 @@
+package com.highestpeak.gist.unit.concurrent.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.highestpeak.gist.concurrent.util.DelayBufferCodec;
+import com.highestpeak.gist.concurrent.util.RedisDelayBufferTrigger;
+import com.highestpeak.gist.facade.api.InMemoryRedisCommands;
+
+/**
+ * {@link RedisDelayBufferTrigger} 的单元测试：两个实例共用一个 {@link InMemoryRedisCommands}，模拟同一个集群
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+class RedisDelayBufferTriggerTest {
+
+    private static final DelayBufferCodec<Integer> INT_CODEC = new DelayBufferCodec<Integer>() {
+        @Override
+        public String encode(Integer value) {
+            return String.valueOf(value);
+        }
+
+        @Override
+        public Integer decode(String text) {
+            return Integer.valueOf(text);
+        }
+    };
+
+    private InMemoryRedisCommands redis = new InMemoryRedisCommands();
+    private final List<RedisDelayBufferTrigger<Integer, Integer>> triggers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        triggers.forEach(RedisDelayBufferTrigger::shutdown);
+    }
+
+    @Test
+    void eachKeyDispatchedOncePerWindowAcrossInstances() throws Exception {
+        int keyCount = 200;
+        Map<Integer, List<Integer>> dispatched = new ConcurrentHashMap<>();
+        BiConsumer<Integer, Integer> consumer = (key, val) ->
+                dispatched.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(val);
+        RedisDelayBufferTrigger<Integer, Integer> first = newTrigger("instance-a", consumer, TimeUnit.SECONDS.toMillis(30));
+        RedisDelayBufferTrigger<Integer, Integer> second = newTrigger("instance-b", consumer, TimeUnit.SECONDS.toMillis(30));
+
+        for (int window = 1; window <= 2; window++) {
+            // 每个 key 在两个实例上各写 5 次，集群内合并成一次分发，值为写入次数之和
+            for (int i = 0; i < 5; i++) {
+                for (int key = 0; key < keyCount; key++) {
+                    first.add(key, 1, 300, TimeUnit.MILLISECONDS);
+                    second.add(key, 1, 300, TimeUnit.MILLISECONDS);
+                }
+            }
+            awaitDispatched(dispatched, keyCount, window);
+            Thread.sleep(500); // 留出时间暴露重复分发
+            for (int key = 0; key < keyCount; key++) {
+                List<Integer> values = dispatched.get(key);
+                assertEquals(window, values.size(), "key " + key + " dispatched " + values);
+                assertEquals(10, values.get(window - 1).intValue());
+            }
+        }
+    }
+
+    @Test
+    void keyDispatchedAgainAfterLeaseExpires() throws Exception {
+        long leaseMs = 300;
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        List<Long> dispatchTs = new CopyOnWriteArrayList<>();
+        List<Integer> values = new CopyOnWriteArrayList<>();
+        BiConsumer<Integer, Integer> consumer = (key, val) -> {
+            dispatchTs.add(System.currentTimeMillis());
+            values.add(val);
+            if (dispatchTs.size() == 1) {
+                // 第一次分发卡住，相当于实例在消费过程中崩溃，租约过期前不会删除 redis 中的值
+                try {
+                    releaseFirst.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        RedisDelayBufferTrigger<Integer, Integer> first = newTrigger("instance-a", consumer, leaseMs);
+        RedisDelayBufferTrigger<Integer, Integer> second = newTrigger("instance-b", consumer, leaseMs);
+        try {
+            first.add(1, 1, 100, TimeUnit.MILLISECONDS);
+            second.add(1, 2, 100, TimeUnit.MILLISECONDS);
+
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+            while (dispatchTs.size() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, dispatchTs.size(), "not dispatched again after lease expired");
+            assertTrue(dispatchTs.get(1) - dispatchTs.get(0) >= leaseMs, dispatchTs.toString());
+            // 至少一次：第二次分发拿到的是同一批值
+            assertEquals(3, values.get(0).intValue());
+            assertEquals(3, values.get(1).intValue());
+        } finally {
+            releaseFirst.countDown();
+        }
+    }
+
+    @Test
+    void failedFlushRetriedWithoutDoubleCounting() throws Exception {
+        AtomicInteger failures = new AtomicInteger(2);
+        // HSET 已经写入、ZADD 失败，模拟管道执行到一半连接断开
+        redis = new InMemoryRedisCommands() {
+            @Override
+            public synchronized Long zadd(String key, Map<String, Double> scoreMembers, String option) {
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("connection reset");
+                }
+                return super.zadd(key, scoreMembers, option);
+            }
+        };
+        int keyCount = 50;
+        Map<Integer, List<Integer>> dispatched = new ConcurrentHashMap<>();
+        RedisDelayBufferTrigger<Integer, Integer> trigger = newTrigger("instance-a", (key, val) ->
+                dispatched.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(val), TimeUnit.SECONDS.toMillis(30), 20);
+        // 同一个 key 的多次写入可能落在不同的批次里，执行时间留够重试的时间，重试完成前不会被分发
+        for (int i = 0; i < 3; i++) {
+            for (int key = 0; key < keyCount; key++) {
+                trigger.add(key, 1, 500, TimeUnit.MILLISECONDS);
+            }
+        }
+        awaitDispatched(dispatched, keyCount, 1);
+        Thread.sleep(300); // 留出时间暴露重复分发
+        assertTrue(failures.get() < 0, "flush never failed");
+        for (int key = 0; key < keyCount; key++) {
+            List<Integer> values = dispatched.get(key);
+            assertEquals(1, values == null ? 0 : values.size(), "key " + key + " dispatched " + values);
+            assertEquals(3, values.get(0).intValue(), "key " + key);
+        }
+    }
+
+    private RedisDelayBufferTrigger<Integer, Integer> newTrigger(String instanceId, BiConsumer<Integer, Integer> consumer,
+            long leaseMs) {
+        return newTrigger(instanceId, consumer, leaseMs, 1000);
+    }
+
+    private RedisDelayBufferTrigger<Integer, Integer> newTrigger(String instanceId, BiConsumer<Integer, Integer> consumer,
+            long leaseMs, long flushRetryMs) {
+        RedisDelayBufferTrigger<Integer, Integer> trigger = RedisDelayBufferTrigger.<Integer, Integer> newBuilder()
+                .redis(redis)
+                .name("test")
+                .instanceId(instanceId)
+                .keyCodec(INT_CODEC)
+                .valCodec(INT_CODEC)
+                .upToTimeConsumer(consumer)
+                .dupValConsumer(Integer::sum)
+                .localFlushMs(50)
+                .flushRetryMs(flushRetryMs)
+                .leaseMs(leaseMs)
+                .pollIntervalMs(20)
+                .build();
+        triggers.add(trigger);
+        return trigger;
+    }
+
+    private static void awaitDispatched(Map<Integer, List<Integer>> dispatched, int keyCount, int times) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (System.currentTimeMillis() < deadline) {
+            if (dispatched.size() == keyCount && dispatched.values().stream().allMatch(values -> values.size() >= times)) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.highestpeak.gist.unit.concurrent.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BinaryOperator;
+
+import org.junit.jupiter.api.Test;
+
+import com.highestpeak.gist.concurrent.util.SkipDuplicateExecutor;
+
+/**
+ * {@link SkipDuplicateExecutor} 的单元测试：执行期间的提交合并成一次 rerun、future 在覆盖它的执行结束时完成、
+ * handler 异常、close 后 rerun 仍然执行，以及 {@link SkipDuplicateExecutor#newLaneExecutor} 换 lane 后仍然串行、仍然去重
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+class SkipDuplicateExecutorTest {
+
+    /**
+     * 第一次执行卡住，期间的提交都合并到同一个 pending rerun
+     */
+    @Test
+    void submissionsDuringRunCollapseIntoOneRerunWithLatestValue() throws Exception {
+        BlockingHandler handler = new BlockingHandler();
+        SkipDuplicateExecutor<String, Integer> executor = SkipDuplicateExecutor.newExecutor(2, "skip-duplicate-test", handler::handle);
+        try {
+            CompletableFuture<Void> first = executor.submit("key", 0);
+            assertTrue(handler.started.await(5, TimeUnit.SECONDS));
+            List<CompletableFuture<Void>> pending = new ArrayList<>();
+            for (int i = 1; i <= 10; i++) {
+                pending.add(executor.submit("key", i));
+            }
+            for (CompletableFuture<Void> future : pending) {
+                assertSame(pending.get(0), future);
+            }
+            handler.release.countDown();
+            CompletableFuture.allOf(first, pending.get(0)).get(5, TimeUnit.SECONDS);
+
+            assertEquals(Arrays.asList(0, 10), handler.values);
+        } finally {
+            executor.close();
+        }
+    }
+
+    @Test
+    void rerunCarriesMergedValue() throws Exception {
+        BlockingHandler handler = new BlockingHandler();
+        BinaryOperator<Integer> sum = Integer::sum;
+        SkipDuplicateExecutor<String, Integer> executor = SkipDuplicateExecutor.newExecutor(2, "skip-duplicate-test", handler::handle, sum);
+        try {
+            CompletableFuture<Void> first = executor.submit("key", 100);
+            assertTrue(handler.started.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Void> rerun = null;
+            for (int i = 1; i <= 10; i++) {
+                rerun = executor.submit("key", i);
+            }
+            handler.release.countDown();
+            CompletableFuture.allOf(first, rerun).get(5, TimeUnit.SECONDS);
+
+            assertEquals(Arrays.asList(100, 55), handler.values);
+        } finally {
+            executor.close();
+        }
+    }
+
+    @Test
+    void everyFutureCompletesWhenCoveringRunFinishes() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CountDownLatch rerunStarted = new CountDownLatch(1);
+        CountDownLatch releaseRerun = new CountDownLatch(1);
+        SkipDuplicateExecutor<String, Integer> executor = SkipDuplicateExecutor.newExecutor(2, "skip-duplicate-test", (key, val) -> {
+            CountDownLatch started = val == 0 ? firstStarted : rerunStarted;
+            CountDownLatch release = val == 0 ? releaseFirst : releaseRerun;
+            started.countDown();
+            await(release);
+        });
+        try {
+            CompletableFuture<Void> first = executor.submit("key", 0);
+            assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Void> second = executor.submit("key", 1);
+            CompletableFuture<Void> third = executor.submit("key", 2);
+            assertFalse(first.isDone());
+
+            releaseFirst.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            assertTrue(rerunStarted.await(5, TimeUnit.SECONDS));
+            // 被合并的提交要等 rerun 执行完才完成
+            assertFalse(second.isDone());
+            assertFalse(third.isDone());
+
+            releaseRerun.countDown();
+            second.get(5, TimeUnit.SECONDS);
+            third.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.close();
+        }
+    }
+
+    @Test
+    void handlerExceptionCompletesFutureExceptionally() throws Exception {
+        IllegalStateException failure = new IllegalStateException("handler failed");
+        AtomicInteger executed = new AtomicInteger();
+        SkipDuplicateExecutor<String, Integer> executor = SkipDuplicateExecutor.newExecutor(2, "skip-duplicate-test", (key, val) -> {
+            executed.incrementAndGet();
+            if (val < 0) {
+                throw failure;
+            }
+        });
+        try {
+            ExecutionException thrown = assertThrows(ExecutionException.class, () -> executor.submit("key", -1).get(5, TimeUnit.SECONDS));
+            assertSame(failure, thrown.getCause());
+            // 异常之后同一个 key 仍然可以继续提交
+            executor.submit("key", 1).get(5, TimeUnit.SECONDS);
+            assertEquals(2, executed.get());
+        } finally {
+            executor.close();
+        }
+    }
+
+    @Test
+    void closeStillRunsPendingRerun() throws Exception {
+        BlockingHandler handler = new BlockingHandler();
+        SkipDuplicateExecutor<String, Integer> executor = SkipDuplicateExecutor.newExecutor(1, "skip-duplicate-test", handler::handle);
+        CompletableFuture<Void> first = executor.submit("key", 0);
+        assertTrue(handler.started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Void> rerun = executor.submit("key", 1);
+
+        executor.close();
+        assertThrows(RejectedExecutionException.class, () -> executor.submit("other", 2));
+        handler.release.countDown();
+        CompletableFuture.allOf(first, rerun).get(5, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList(0, 1), handler.values);
+    }
+
+    @Test
+    void keyMovingBetweenLanesNeverRunsConcurrently() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<String> threads = new CopyOnWriteArrayList<>();
+        SkipDuplicateExecutor<String, Integer> executor = SkipDuplicateExecutor.newLaneExecutor(
+                new int[] {2, 2}, new String[] {"lane-high", "lane-low"}, lane -> lane,
+                (key, lane) -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    threads.add(Thread.currentThread().getName());
+                    firstStarted.countDown();
+                    try {
+                        releaseFirst.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                },
+                Math::min);
+        try {
+            CompletableFuture<Void> first = executor.submit("key", 1);
+            assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+            // 第一次在低优先级的 lane 上执行期间，同一个 key 以高优先级再提交两次，合并为一次 rerun
+            CompletableFuture<Void> second = executor.submit("key", 0);
+            CompletableFuture<Void> third = executor.submit("key", 1);
+            assertSame(second, third);
+            releaseFirst.countDown();
+            CompletableFuture.allOf(first, second).get(5, TimeUnit.SECONDS);
+
+            assertEquals(1, maxRunning.get());
+            assertEquals(2, threads.size());
+            assertTrue(threads.get(0).startsWith("lane-low"), threads.toString());
+            // rerun 按合并后的值（较高的优先级）选择线程池
+            assertTrue(threads.get(1).startsWith("lane-high"), threads.toString());
+        } finally {
+            executor.close();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 记录每次执行的值，第一次执行阻塞到 release
+     */
+    private static final class BlockingHandler {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<Integer> values = new CopyOnWriteArrayList<>();
+
+        private void handle(String key, Integer val) {
+            values.add(val);
+            started.countDown();
+            await(release);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.highestpeak.gist.unit.db.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.highestpeak.gist.db.util.BatchUpsertMapper;
+import com.highestpeak.gist.db.util.DBBatchWriter;
+import com.highestpeak.gist.db.util.InMemoryEntityMapper;
+import com.highestpeak.gist.db.util.InMemoryEntityMapper.Row;
+
+/**
+ * {@link DBBatchWriter} 的单元测试：close 之后拒绝 write，和 close 并发的 write 要么被拒绝要么被写入，不会丢失
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+class DBBatchWriterTest {
+
+    @Test
+    void writeAfterCloseRejected() {
+        UpsertMapper mapper = new UpsertMapper();
+        DBBatchWriter<Row> writer = newWriter(mapper);
+        writer.write(new Row(1));
+        writer.close();
+
+        assertThrows(IllegalStateException.class, () -> writer.write(new Row(2)));
+        assertEquals(1, mapper.upserted.size());
+    }
+
+    /**
+     * 测试线程先持有 writer 的锁，让 write 和 close 都停在加锁的地方，再同时放开，两种先后顺序都要么拒绝要么写入
+     */
+    @Test
+    void writeRacingCloseRejectedOrWritten() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            UpsertMapper mapper = new UpsertMapper();
+            DBBatchWriter<Row> writer = newWriter(mapper);
+            AtomicBoolean accepted = new AtomicBoolean();
+            Thread writeThread = new Thread(() -> {
+                try {
+                    writer.write(new Row(1));
+                    accepted.set(true);
+                } catch (IllegalStateException e) {
+                    // close 先拿到锁
+                }
+            });
+            Thread closeThread = new Thread(writer::close);
+            synchronized (writer) {
+                writeThread.start();
+                awaitBlocked(writeThread);
+                closeThread.start();
+                awaitBlocked(closeThread);
+            }
+            writeThread.join(TimeUnit.SECONDS.toMillis(5));
+            closeThread.join(TimeUnit.SECONDS.toMillis(5));
+
+            assertEquals(accepted.get() ? 1 : 0, mapper.upserted.size(), "round " + round);
+            assertThrows(IllegalStateException.class, () -> writer.write(new Row(2)));
+        }
+    }
+
+    @Test
+    void writesBlockedOnBackpressureFinishBeforeClose() throws Exception {
+        UpsertMapper mapper = new UpsertMapper();
+        DBBatchWriter<Row> writer = newWriter(mapper);
+        Set<Long> accepted = ConcurrentHashMap.newKeySet();
+        AtomicLong nextId = new AtomicLong();
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(() -> {
+                while (true) {
+                    long id = nextId.incrementAndGet();
+                    try {
+                        writer.write(new Row(id));
+                    } catch (IllegalStateException e) {
+                        return;
+                    }
+                    accepted.add(id);
+                }
+            });
+            writers.add(thread);
+            thread.start();
+        }
+        Thread.sleep(20);
+        writer.close();
+        for (Thread thread : writers) {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+
+        assertEquals(accepted, mapper.upserted);
+        assertEquals(accepted.size(), writer.getWrittenRows().sum());
+        assertEquals(0, writer.getFailedRows().sum());
+    }
+
+    private static void awaitBlocked(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (thread.getState() != Thread.State.BLOCKED && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(Thread.State.BLOCKED, thread.getState());
+    }
+
+    private static DBBatchWriter<Row> newWriter(UpsertMapper mapper) {
+        return DBBatchWriter.<Row> newBuilder()
+                .mapper(mapper)
+                .batchSize(7)
+                .writeThreads(1)
+                .maxPendingBatches(2)
+                .flushInterval(Duration.ofMillis(1))
+                .maxRetries(0)
+                .build();
+    }
+
+    /**
+     * 记录写入的 id，每批稍微慢一点，让 write 阻塞在反压上
+     */
+    private static class UpsertMapper extends InMemoryEntityMapper implements BatchUpsertMapper<Row> {
+        private final Set<Long> upserted = ConcurrentHashMap.newKeySet();
+
+        UpsertMapper() {
+            super(1, 0);
+        }
+
+        @Override
+        public int upsertBatch(Collection<Row> entities) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            entities.forEach(row -> upserted.add(row.getId()));
+            return entities.size();
+        }
+    }
+}
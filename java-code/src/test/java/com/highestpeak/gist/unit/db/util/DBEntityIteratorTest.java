@@ -0,0 +1,135 @@
+package com.highestpeak.gist.unit.db.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.highestpeak.gist.db.util.DBEntityIterator;
+import com.highestpeak.gist.db.util.InMemoryEntityMapper;
+import com.highestpeak.gist.db.util.InMemoryEntityMapper.Row;
+
+/**
+ * {@link DBEntityIterator} 预取的单元测试：预取的每一页从前一页的最大 id 开始查询、不满一页后不再查询、
+ * 查询失败后丢弃依赖它的预取并从已经取出的位置重试，以及 getOffset 只计入返回给调用方的数据
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+class DBEntityIteratorTest {
+
+    private static final int PAGE_SIZE = 10;
+
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    @Test
+    void prefetchedPagesChainOnPreviousLastId() {
+        InMemoryEntityMapper mapper = new InMemoryEntityMapper(1, 95);
+        DBEntityIterator<Row> iterator = newIterator(mapper, 3);
+
+        assertEquals(ids(1, 95), drain(iterator));
+        // 最后一页不满 limit，后面预取的页不再查询
+        assertEquals(Arrays.asList(0L, 10L, 20L, 30L, 40L, 50L, 60L, 70L, 80L, 90L), mapper.lowerBounds());
+        assertFalse(iterator.hasNext());
+        assertEquals(10, mapper.lowerBounds().size());
+    }
+
+    @Test
+    void stopsAfterEmptyPageWhenRowsFillLastPage() {
+        InMemoryEntityMapper mapper = new InMemoryEntityMapper(1, 30);
+        DBEntityIterator<Row> iterator = newIterator(mapper, 2);
+
+        assertEquals(ids(1, 30), drain(iterator));
+        assertFalse(iterator.hasNext());
+        assertEquals(Arrays.asList(0L, 10L, 20L, 30L), mapper.lowerBounds());
+    }
+
+    @Test
+    void failedPageRetriedFromFetchedId() {
+        InMemoryEntityMapper mapper = new InMemoryEntityMapper(1, 75);
+        mapper.failOnceAt(30);
+        DBEntityIterator<Row> iterator = newIterator(mapper, 3);
+
+        List<Long> returned = new ArrayList<>();
+        while (returned.size() < 30) {
+            returned.add(iterator.next().getId());
+        }
+        // 第 4 页失败，依赖它的两页也一起失败
+        assertThrows(IllegalStateException.class, iterator::hasNext);
+        assertEquals(30, iterator.getOffset());
+        // 丢弃失败的预取，从已经取出的最后一个 id 重新查询
+        returned.addAll(drain(iterator));
+
+        assertEquals(ids(1, 75), returned);
+        assertEquals(Arrays.asList(0L, 10L, 20L, 30L, 30L, 40L, 50L, 60L, 70L), mapper.lowerBounds());
+    }
+
+    @Test
+    void offsetCountsOnlyReturnedRows() {
+        InMemoryEntityMapper mapper = new InMemoryEntityMapper(1, 50);
+        DBEntityIterator<Row> iterator = newIterator(mapper, 2);
+
+        assertEquals(0, iterator.getOffset());
+        assertEquals(1, iterator.next().getId().longValue());
+        assertEquals(1, iterator.getOffset());
+        for (int i = 2; i <= PAGE_SIZE; i++) {
+            iterator.next();
+        }
+        // hasNext 取出了第二页，但还没有返回给调用方，不计入 offset
+        assertTrue(iterator.hasNext());
+        assertTrue(mapper.lowerBounds().contains((long) PAGE_SIZE), mapper.lowerBounds().toString());
+        assertEquals(PAGE_SIZE, iterator.getOffset());
+        iterator.next();
+        assertEquals(PAGE_SIZE + 1, iterator.getOffset());
+    }
+
+    @Test
+    void synchronousAndPrefetchReturnSameRows() {
+        InMemoryEntityMapper mapper = new InMemoryEntityMapper(1, 123);
+        DBEntityIterator<Row> synchronous = DBEntityIterator.<Row> newBuilder()
+                .entityMapper(mapper)
+                .entityClass(Row.class)
+                .pageSize(PAGE_SIZE)
+                .build();
+
+        assertEquals(drain(synchronous), drain(newIterator(mapper, 4)));
+    }
+
+    private DBEntityIterator<Row> newIterator(InMemoryEntityMapper mapper, int prefetchPages) {
+        return DBEntityIterator.<Row> newBuilder()
+                .entityMapper(mapper)
+                .entityClass(Row.class)
+                .pageSize(PAGE_SIZE)
+                .prefetchExecutor(prefetchExecutor)
+                .prefetchPages(prefetchPages)
+                .build();
+    }
+
+    private static List<Long> drain(DBEntityIterator<Row> iterator) {
+        List<Long> ids = new ArrayList<>();
+        while (iterator.hasNext()) {
+            ids.add(iterator.next().getId());
+        }
+        return ids;
+    }
+
+    private static List<Long> ids(long from, long to) {
+        return LongStream.rangeClosed(from, to).boxed().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,159 @@
+package com.highestpeak.gist.unit.db.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.highestpeak.gist.db.util.DBRangeScanner;
+import com.highestpeak.gist.db.util.DBRangeScanner.Range;
+import com.highestpeak.gist.db.util.InMemoryEntityMapper;
+import com.highestpeak.gist.db.util.InMemoryEntityMapper.Row;
+
+/**
+ * {@link DBRangeScanner} 的单元测试：按 min/max 切分的区间首尾相连并且覆盖 min..max、
+ * 开始遍历的区间不会被拆分出去、并行 stream 每一行恰好返回一次
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+class DBRangeScannerTest {
+
+    private final ExecutorService queryExecutor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void tearDown() {
+        queryExecutor.shutdownNow();
+    }
+
+    @Test
+    void rangesSplitByMinMaxAreContiguousAndCoverAllIds() {
+        long[][] idSpans = {{1, 1}, {1, 3}, {1, 1000}, {-50, 49}, {101, 103}, {7, 1_000_007}};
+        for (long[] span : idSpans) {
+            InMemoryEntityMapper mapper = new InMemoryEntityMapper(span[0], span[1]);
+            for (int rangeCount = 1; rangeCount <= 9; rangeCount++) {
+                List<Range> ranges = newBuilder(mapper).startId(Long.MIN_VALUE).rangeCount(rangeCount).build().getRanges();
+                String message = Arrays.toString(span) + " rangeCount " + rangeCount + ": " + ranges;
+
+                assertTrue(!ranges.isEmpty() && ranges.size() <= rangeCount, message);
+                assertEquals(span[0] - 1, ranges.get(0).getStartId(), message);
+                assertEquals(span[1], ranges.get(ranges.size() - 1).getEndId(), message);
+                for (int i = 1; i < ranges.size(); i++) {
+                    assertEquals(ranges.get(i - 1).getEndId(), ranges.get(i).getStartId(), message);
+                }
+            }
+        }
+    }
+
+    @Test
+    void rangesStartAfterStartId() {
+        InMemoryEntityMapper mapper = new InMemoryEntityMapper(1, 1000);
+        List<Range> ranges = newBuilder(mapper).startId(600).rangeCount(4).build().getRanges();
+
+        assertEquals(600, ranges.get(0).getStartId());
+        assertEquals(1000, ranges.get(ranges.size() - 1).getEndId());
+    }
+
+    @Test
+    void noRangesWhenTableEmptiedBetweenBoundQueries() {
+        AtomicInteger queries = new AtomicInteger();
+        InMemoryEntityMapper mapper = new InMemoryEntityMapper(1, 100) {
+            @Override
+            public synchronized List<Row> selectList(Wrapper<Row> queryWrapper) {
+                List<Row> rows = super.selectList(queryWrapper);
+                if (queries.incrementAndGet() == 1) {
+                    removeAll(); // min(id) 查到之后数据被删光，max(id) 查不到
+                }
+                return rows;
+            }
+        };
+
+        DBRangeScanner<Row> scanner = newBuilder(mapper).rangeCount(4).build();
+
+        assertEquals(2, queries.get());
+        assertTrue(scanner.getRanges().isEmpty());
+        assertTrue(scanner.isCompleted());
+    }
+
+    @Test
+    void trySplitHandsOffOnlyUnstartedRanges() {
+        InMemoryEntityMapper mapper = new InMemoryEntityMapper(1, 800);
+        Spliterator<Row> started = newBuilder(mapper).rangeCount(8).build().spliterator();
+        List<Long> firstRows = new ArrayList<>();
+        assertTrue(started.tryAdvance(row -> firstRows.add(row.getId())));
+        assertEquals(ids(1, 1), firstRows);
+        // 第一个区间已经开始遍历，拆出去的就不再是前缀
+        assertNull(started.trySplit());
+
+        Spliterator<Row> suffix = newBuilder(mapper).rangeCount(8).build().spliterator();
+        Spliterator<Row> prefix = suffix.trySplit();
+        assertNotNull(prefix);
+        List<Long> prefixIds = drain(prefix);
+        List<Long> suffixIds = drain(suffix);
+
+        assertEquals(ids(1, 400), prefixIds);
+        assertEquals(ids(401, 800), suffixIds);
+    }
+
+    @Test
+    void parallelStreamReturnsEveryRowOnce() {
+        InMemoryEntityMapper mapper = new InMemoryEntityMapper(1, 5000);
+        DBRangeScanner<Row> scanner = newBuilder(mapper)
+                .rangeCount(8)
+                .pageSize(50)
+                .queryExecutor(queryExecutor)
+                .prefetchPages(2)
+                .build();
+
+        List<Long> scanned = scanner.stream().map(Row::getId).collect(Collectors.toList());
+
+        assertEquals(ids(1, 5000), scanned);
+        assertTrue(scanner.isCompleted());
+    }
+
+    @Test
+    void parallelStreamWithSplitPointsReturnsEveryRowOnce() {
+        InMemoryEntityMapper mapper = new InMemoryEntityMapper(1, 3000);
+        DBRangeScanner<Row> scanner = newBuilder(mapper)
+                .splitPoints(Arrays.asList(2500L, 100L, 100L, 1200L))
+                .pageSize(64)
+                .build();
+
+        List<Long> scanned = scanner.stream().map(Row::getId).collect(Collectors.toList());
+
+        assertEquals(4, scanner.getRanges().size());
+        assertEquals(Long.MAX_VALUE, scanner.getRanges().get(3).getEndId());
+        assertEquals(ids(1, 3000), scanned);
+    }
+
+    private static DBRangeScanner.Builder<Row> newBuilder(InMemoryEntityMapper mapper) {
+        return DBRangeScanner.<Row> newBuilder()
+                .entityMapper(mapper)
+                .entityClass(Row.class)
+                .pageSize(100);
+    }
+
+    private static List<Long> drain(Spliterator<Row> spliterator) {
+        List<Long> ids = new ArrayList<>();
+        spliterator.forEachRemaining(row -> ids.add(row.getId()));
+        return ids;
+    }
+
+    private static List<Long> ids(long from, long to) {
+        return LongStream.rangeClosed(from, to).boxed().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,202 @@
+package com.highestpeak.gist.unit.db.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.highestpeak.gist.db.util.DBEntityIterator;
+import com.highestpeak.gist.db.util.DBRangeScanner;
+import com.highestpeak.gist.db.util.DBRangeScanner.Range;
+import com.highestpeak.gist.db.util.FileScanCheckpointStore;
+import com.highestpeak.gist.db.util.InMemoryEntityMapper;
+import com.highestpeak.gist.db.util.InMemoryEntityMapper.Row;
+import com.highestpeak.gist.db.util.ScanCheckpointStore;
+
+/**
+ * 断点续扫的单元测试：{@link FileScanCheckpointStore} 的读写、{@link DBRangeScanner} 从 startId:endId 恢复区间
+ * （包括负数 id、已经完成的有界区间和需要重新扫描的无界区间），以及只从确认过的位置继续
+ *
+ * @author highestpeak <highestpeak@163.com>
+ * Created on 2026-10-17
+ */
+class ScanCheckpointTest {
+
+    private static final String SCAN_NAME = "scan";
+    private static final String TAIL = ":" + Long.MAX_VALUE;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void fileStoreRoundTrip() {
+        ScanCheckpointStore store = new FileScanCheckpointStore(dir);
+        Map<String, Long> checkpoint = new HashMap<>();
+        checkpoint.put("-20:-5", -5L);
+        checkpoint.put("-5:100", 42L);
+        checkpoint.put("100" + TAIL, Long.MAX_VALUE - 1);
+        store.save(SCAN_NAME, checkpoint);
+
+        assertEquals(checkpoint, new FileScanCheckpointStore(dir).load(SCAN_NAME));
+        // 覆盖保存，不会留下上一次的区间
+        store.save(SCAN_NAME, Collections.singletonMap(ScanCheckpointStore.SINGLE_RANGE, 7L));
+        assertEquals(Collections.singletonMap(ScanCheckpointStore.SINGLE_RANGE, 7L), store.load(SCAN_NAME));
+        assertTrue(store.load("other").isEmpty());
+
+        store.clear(SCAN_NAME);
+        assertTrue(store.load(SCAN_NAME).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> store.load("../" + SCAN_NAME));
+    }
+
+    @Test
+    void rangeScannerRestoresSavedRanges() {
+        ScanCheckpointStore store = new FileScanCheckpointStore(dir);
+        Map<String, Long> saved = new HashMap<>();
+        saved.put("-20:-5", -5L);
+        saved.put("-5:100", 100L);
+        saved.put("100:200", 150L);
+        saved.put("200" + TAIL, 250L);
+        store.save(SCAN_NAME, saved);
+        InMemoryEntityMapper mapper = new InMemoryEntityMapper(-19, 300);
+
+        DBRangeScanner<Row> scanner = newScanner(mapper, store).build();
+
+        List<Range> ranges = scanner.getRanges();
+        assertEquals(4, ranges.size());
+        assertRange(ranges.get(0), -20, -5, -5, true);
+        assertRange(ranges.get(1), -5, 100, 100, true);
+        assertRange(ranges.get(2), 100, 200, 150, false);
+        assertRange(ranges.get(3), 200, Long.MAX_VALUE, 250, false);
+        List<Long> expected = ids(151, 200);
+        expected.addAll(ids(251, 300));
+        assertEquals(expected, scan(scanner));
+    }
+
+    @Test
+    void finishedBoundedRangesSavedAsCompletedAndTailRescanned() {
+        ScanCheckpointStore store = new FileScanCheckpointStore(dir);
+        InMemoryEntityMapper mapper = new InMemoryEntityMapper(1, 150);
+        DBRangeScanner<Row> scanner = newScanner(mapper, store).splitPoints(Collections.singletonList(100L)).build();
+        assertEquals(ids(1, 150), scan(scanner));
+        scanner.checkpoint();
+
+        Map<String, Long> expected = new HashMap<>();
+        expected.put("0:100", 100L);
+        expected.put("100" + TAIL, 150L);
+        assertEquals(expected, store.load(SCAN_NAME));
+
+        // 无界的区间扫描完也要重新扫描，接上之后新插入的数据
+        for (long id = 151; id <= 160; id++) {
+            mapper.add(id);
+        }
+        DBRangeScanner<Row> resumed = newScanner(mapper, store).build();
+        assertTrue(resumed.getRanges().get(0).isCompleted());
+        assertFalse(resumed.getRanges().get(1).isCompleted());
+        assertEquals(ids(151, 160), scan(resumed));
+    }
+
+    @Test
+    void rangeScannerResumesFromLastProcessedRow() {
+        ScanCheckpointStore store = new FileScanCheckpointStore(dir);
+        InMemoryEntityMapper mapper = new InMemoryEntityMapper(1, 100);
+        DBRangeScanner<Row> scanner = newScanner(mapper, store).rangeCount(1).build();
+        Spliterator<Row> spliterator = scanner.spliterator();
+        List<Long> processed = new ArrayList<>();
+        // 处理到 30 时失败，30 没有处理完
+        assertThrows(IllegalStateException.class, () -> spliterator.forEachRemaining(row -> {
+            if (row.getId() == 30) {
+                throw new IllegalStateException("process failed");
+            }
+            processed.add(row.getId());
+        }));
+        scanner.checkpoint();
+
+        assertEquals(ids(1, 29), processed);
+        assertEquals(Collections.singletonMap("0:100", 29L), store.load(SCAN_NAME));
+        assertEquals(ids(30, 100), scan(newScanner(mapper, store).build()));
+    }
+
+    @Test
+    void iteratorResumesFromAcknowledgedId() {
+        ScanCheckpointStore store = new FileScanCheckpointStore(dir);
+        InMemoryEntityMapper mapper = new InMemoryEntityMapper(1, 100);
+        DBEntityIterator<Row> iterator = newIterator(mapper, store).build();
+        for (int i = 0; i < 5; i++) {
+            iterator.next();
+        }
+        iterator.acknowledge();
+        // 返回了但没有确认的数据，恢复后会再返回一次
+        for (int i = 0; i < 3; i++) {
+            iterator.next();
+        }
+        assertEquals(8, iterator.getOffset());
+        iterator.checkpoint();
+        assertEquals(Collections.singletonMap(ScanCheckpointStore.SINGLE_RANGE, 5L), store.load(SCAN_NAME));
+
+        DBEntityIterator<Row> resumed = newIterator(mapper, store).build();
+        assertEquals(6, resumed.next().getId().longValue());
+        // 指定的 offset 比保存的进度更靠后时以 offset 为准
+        assertEquals(21, newIterator(mapper, store).offset(20).build().next().getId().longValue());
+    }
+
+    @Test
+    void iteratorSavesEveryCheckpointRows() {
+        ScanCheckpointStore store = new FileScanCheckpointStore(dir);
+        InMemoryEntityMapper mapper = new InMemoryEntityMapper(1, 100);
+        DBEntityIterator<Row> iterator = newIterator(mapper, store).checkpointRows(10).build();
+        for (int batch = 1; batch <= 3; batch++) {
+            for (int i = 0; i < 4; i++) {
+                iterator.next();
+            }
+            iterator.acknowledge();
+        }
+        // 确认到 8 时还不到 10 行，确认到 12 时保存
+        assertEquals(Collections.singletonMap(ScanCheckpointStore.SINGLE_RANGE, 12L), store.load(SCAN_NAME));
+    }
+
+    private static DBRangeScanner.Builder<Row> newScanner(InMemoryEntityMapper mapper, ScanCheckpointStore store) {
+        return DBRangeScanner.<Row> newBuilder()
+                .entityMapper(mapper)
+                .entityClass(Row.class)
+                .pageSize(16)
+                .checkpointStore(store)
+                .scanName(SCAN_NAME);
+    }
+
+    private static DBEntityIterator.Builder<Row> newIterator(InMemoryEntityMapper mapper, ScanCheckpointStore store) {
+        return DBEntityIterator.<Row> newBuilder()
+                .entityMapper(mapper)
+                .entityClass(Row.class)
+                .pageSize(16)
+                .checkpointStore(store)
+                .scanName(SCAN_NAME);
+    }
+
+    private static void assertRange(Range range, long startId, long endId, long offset, boolean completed) {
+        assertEquals(startId, range.getStartId(), range.toString());
+        assertEquals(endId, range.getEndId(), range.toString());
+        assertEquals(offset, range.getOffset(), range.toString());
+        assertEquals(completed, range.isCompleted(), range.toString());
+    }
+
+    private static List<Long> scan(DBRangeScanner<Row> scanner) {
+        return scanner.stream().map(Row::getId).collect(Collectors.toList());
+    }
+
+    private static List<Long> ids(long from, long to) {
+        return LongStream.rangeClosed(from, to).boxed().collect(Collectors.toList());
+    }
+}